@@ -1,10 +1,12 @@
 package com.mcherm.versionedserialization;
 
 import com.fasterxml.classmate.ResolvedType;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchemaGenerator;
 import com.github.victools.jsonschema.generator.MemberScope;
@@ -15,9 +17,19 @@ import com.github.victools.jsonschema.generator.SchemaGenerator;
 import com.github.victools.jsonschema.generator.SchemaGeneratorConfig;
 import com.github.victools.jsonschema.generator.SchemaGeneratorConfigBuilder;
 import com.github.victools.jsonschema.generator.SchemaVersion;
+import com.mcherm.versionedserialization.migration.MigrationPlan;
+import com.mcherm.versionedserialization.migration.Migrator;
+import com.mcherm.versionedserialization.migration.StreamingMigrator;
+import com.mcherm.versionedserialization.migration.UpdateRules;
 import com.mcherm.versionedserialization.objects.contents.Currency;
+import com.mcherm.versionedserialization.schemadiff.SchemaParser;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
 
+import java.io.IOException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Contains public static methods for serialization and deserialization.
@@ -26,6 +38,16 @@ public class SerializationUtil {
 
     private static final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
 
+    /**
+     * Returns the ObjectMapper used for all serialization in this project. It must not
+     * be reconfigured by callers.
+     *
+     * @return the shared ObjectMapper
+     */
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
     /**
      * This serializes an object to JSON, returning the JSON as a string.
      *
@@ -65,6 +87,65 @@ public class SerializationUtil {
         }
     }
 
+    /**
+     * This deserializes an object from JSON written in an older format, migrating it to
+     * the format of the given class as it is read. The JSON is parsed only once and is
+     * never written back out to a String: if no UpdateRule needs to see the whole
+     * document, the migrated tokens are buffered and bound directly; otherwise the
+     * document is read into a tree, migrated in place, and bound from the tree.
+     *
+     * <p>The schema of each class is worked out only once, and the MigrationPlans most
+     * recently used for each class are remembered (by the fingerprint of sourceSchema and
+     * the identity of updateRules), so callers that reuse the same UpdateRules object
+     * don't build a new plan for each call. Callers that migrate a great many documents
+     * should build the MigrationPlan themselves and use
+     * {@link #deserialize(String, Class, MigrationPlan)}.
+     *
+     * @param serialized the JSON as a string, in the format described by sourceSchema
+     * @param clazz the class to deserialize to
+     * @param sourceSchema the schema the JSON was written with
+     * @param updateRules the rules needed to migrate from sourceSchema to the schema of clazz
+     * @return the newly created object
+     */
+    public static <T> T deserialize(
+            final String serialized,
+            final Class<T> clazz,
+            final SchemaInfo sourceSchema,
+            final UpdateRules updateRules
+    ) {
+        final MigrationPlan migrationPlan = MigrationCache.classPlans.get(clazz).planFor(sourceSchema, updateRules);
+        return deserialize(serialized, clazz, migrationPlan);
+    }
+
+    /**
+     * This deserializes an object from JSON written in an older format, migrating it
+     * with the given plan (whose target schema should be the schema of clazz) as it is
+     * read. See {@link #deserialize(String, Class, SchemaInfo, UpdateRules)}.
+     *
+     * @param serialized the JSON as a string, in the plan's source format
+     * @param clazz the class to deserialize to
+     * @param migrationPlan the plan to follow
+     * @return the newly created object
+     */
+    public static <T> T deserialize(final String serialized, final Class<T> clazz, final MigrationPlan migrationPlan) {
+        if (migrationPlan.isIdentity()) {
+            return deserialize(serialized, clazz);
+        }
+        try (final JsonParser parser = objectMapper.createParser(serialized)) {
+            if (migrationPlan.requiresWholeDocument()) {
+                final JsonNode document = objectMapper.readTree(parser);
+                return objectMapper.treeToValue(MigrationCache.migrator.migrateInPlace(migrationPlan, document), clazz);
+            }
+            final TokenBuffer migrated = new TokenBuffer(parser);
+            MigrationCache.streamingMigrator.migrate(migrationPlan, parser, migrated);
+            try (final JsonParser migratedParser = migrated.asParser(objectMapper)) {
+                return objectMapper.readValue(migratedParser, clazz);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to deserialize object", e);
+        }
+    }
+
     /**
      * Reads a JSON string into arbitrary objects (JsonNode).
      *
@@ -159,6 +240,80 @@ public class SerializationUtil {
         return configBuilder;
     }
 
+    /**
+     * Holds what deserializing older formats needs, so that it's only created when first
+     * used.
+     */
+    private static class MigrationCache {
+        /** The most MigrationPlans remembered for any one class. */
+        static final int MAX_PLANS_PER_CLASS = 16;
+
+        static final Migrator migrator = new Migrator();
+        static final StreamingMigrator streamingMigrator = new StreamingMigrator(migrator);
+        static final ClassValue<ClassPlans> classPlans = new ClassValue<>() {
+            @Override
+            protected ClassPlans computeValue(final Class<?> clazz) {
+                try {
+                    return new ClassPlans(SchemaParser.parse(generateSchema(clazz)));
+                } catch (UnsupportedSchemaFeature e) {
+                    throw new RuntimeException("Failed to read the schema of " + clazz.getName(), e);
+                }
+            }
+        };
+
+        /**
+         * Identifies a plan by the fingerprint of its source schema and the identity of its
+         * UpdateRules. (The source schema itself is checked as well when a plan is found,
+         * since different schemas can share a fingerprint.)
+         */
+        record PlanKey(String sourceFingerprint, UpdateRules updateRules) {
+            @Override
+            public boolean equals(final Object o) {
+                return o instanceof PlanKey that
+                        && sourceFingerprint.equals(that.sourceFingerprint)
+                        && updateRules == that.updateRules;
+            }
+
+            @Override
+            public int hashCode() {
+                return sourceFingerprint.hashCode() * 31 + System.identityHashCode(updateRules);
+            }
+        }
+
+        /** The schema of one class, and the plans most recently used to read it. */
+        static final class ClassPlans {
+            private final SchemaInfo targetSchema;
+            /** Least recently used first. Guarded by itself. */
+            private final Map<PlanKey, MigrationPlan> plans = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<PlanKey, MigrationPlan> eldest) {
+                    return size() > MAX_PLANS_PER_CLASS;
+                }
+            };
+
+            ClassPlans(final SchemaInfo targetSchema) {
+                this.targetSchema = targetSchema;
+            }
+
+            /** Returns the plan for reading this class from sourceSchema, building it if need be. */
+            MigrationPlan planFor(final SchemaInfo sourceSchema, final UpdateRules updateRules) {
+                final PlanKey key = new PlanKey(sourceSchema.getFingerprint(), updateRules);
+                synchronized (plans) {
+                    final MigrationPlan plan = plans.get(key);
+                    if (plan != null
+                            && (plan.getSourceSchema() == sourceSchema || plan.getSourceSchema().equals(sourceSchema))) {
+                        return plan;
+                    }
+                }
+                final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, updateRules);
+                synchronized (plans) {
+                    plans.put(key, plan);
+                }
+                return plan;
+            }
+        }
+    }
+
     /**
      * Annotates a schema property node with x-javaType using a full generic type
      * signature (e.g. "java.util.List&lt;com.example.Widget&gt;"). Uses getDeclaredType()
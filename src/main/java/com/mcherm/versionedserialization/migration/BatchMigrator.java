@@ -0,0 +1,254 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Migrates many documents that all use the same MigrationPlan, spreading the work across
+ * several threads. Each document gets its own UpdateContext and the plan is shared, so
+ * the only requirement is that the plan's UpdateRules are safe to call from several
+ * threads at once.
+ *
+ * <p>Documents are read from the source only as fast as the work is done: at most
+ * {@code parallelism * 2} documents (or groups, see below) are being migrated or waiting
+ * to be handed on at any time, so the documents never all need to be in memory at once.
+ *
+ * <p>If the plan {@link MigrationPlan#usesBatchRules() uses BatchUpdateRules}, the
+ * documents are migrated in groups of up to {@link #BATCH_SIZE} with
+ * {@link Migrator#migrateAll}, so each such rule is called once per group.
+ *
+ * <p>A BatchMigrator normally has its own ForkJoinPool, which is reused for every call and
+ * shut down by {@link #close}. Because the work runs in that pool, a Migrator that splits
+ * large arrays does so in the same pool rather than in the common pool.
+ */
+public class BatchMigrator implements AutoCloseable {
+    /** The number of documents migrated together when the plan uses BatchUpdateRules. */
+    public static final int BATCH_SIZE = 256;
+
+    private final Migrator migrator;
+    private final ExecutorService executor;
+    /** True if the executor was created here, so close() should shut it down. */
+    private final boolean ownsExecutor;
+    private final int parallelism;
+    private final boolean preserveOrder;
+
+    /**
+     * Constructor. The BatchMigrator has its own ForkJoinPool, which is shut down by
+     * {@link #close}.
+     *
+     * @param parallelism the number of threads to use
+     * @param preserveOrder if true, results come out in the same order as the documents
+     *                      went in; if false they may come out in any order, which
+     *                      allows a little more parallelism
+     */
+    public BatchMigrator(final int parallelism, final boolean preserveOrder) {
+        this(new Migrator(), parallelism, preserveOrder);
+    }
+
+    /**
+     * Constructor. The BatchMigrator has its own ForkJoinPool, which is shut down by
+     * {@link #close}.
+     *
+     * @param migrator the Migrator to use for each document
+     * @param parallelism the number of threads to use
+     * @param preserveOrder if true, results come out in the same order as the documents
+     *                      went in; if false they may come out in any order, which
+     *                      allows a little more parallelism
+     */
+    public BatchMigrator(final Migrator migrator, final int parallelism, final boolean preserveOrder) {
+        this(migrator, new ForkJoinPool(checkParallelism(parallelism)), true, parallelism, preserveOrder);
+    }
+
+    /**
+     * Constructor, for using an ExecutorService the caller manages. It is never shut
+     * down by the BatchMigrator. Unless it is a ForkJoinPool, a Migrator that splits
+     * large arrays does so in the common pool, whatever the parallelism given here.
+     *
+     * @param migrator the Migrator to use for each document
+     * @param executor runs the migrations; it must not be running the caller's thread
+     *                 unless it has threads to spare
+     * @param parallelism the number of migrations to run at the same time
+     * @param preserveOrder if true, results come out in the same order as the documents
+     *                      went in; if false they may come out in any order, which
+     *                      allows a little more parallelism
+     */
+    public BatchMigrator(
+            final Migrator migrator,
+            final ExecutorService executor,
+            final int parallelism,
+            final boolean preserveOrder
+    ) {
+        this(migrator, executor, false, checkParallelism(parallelism), preserveOrder);
+    }
+
+    private BatchMigrator(
+            final Migrator migrator,
+            final ExecutorService executor,
+            final boolean ownsExecutor,
+            final int parallelism,
+            final boolean preserveOrder
+    ) {
+        this.migrator = migrator;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.parallelism = parallelism;
+        this.preserveOrder = preserveOrder;
+    }
+
+    /** Returns the parallelism if it is valid, or throws an exception. */
+    private static int checkParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        return parallelism;
+    }
+
+    /**
+     * Migrates every document in a Stream, returning the results. The source documents
+     * are not modified.
+     *
+     * @param migrationPlan the plan to follow for every document
+     * @param sourceDocuments the documents to migrate
+     * @return the migrated documents
+     */
+    public List<JsonNode> migrateAll(final MigrationPlan migrationPlan, final Stream<JsonNode> sourceDocuments) {
+        final List<JsonNode> results = new ArrayList<>();
+        migrateAll(migrationPlan, sourceDocuments, results::add);
+        return results;
+    }
+
+    /**
+     * Migrates every document in an Iterable, returning the results. The source documents
+     * are not modified.
+     *
+     * @param migrationPlan the plan to follow for every document
+     * @param sourceDocuments the documents to migrate
+     * @return the migrated documents
+     */
+    public List<JsonNode> migrateAll(final MigrationPlan migrationPlan, final Iterable<JsonNode> sourceDocuments) {
+        return migrateAll(migrationPlan, StreamSupport.stream(sourceDocuments.spliterator(), false));
+    }
+
+    /**
+     * Migrates every document in a Stream, passing each result to a Consumer instead of
+     * collecting them, so the results never all need to be in memory at once. The
+     * consumer is called from the thread that called this method. The source documents
+     * are not modified.
+     *
+     * @param migrationPlan the plan to follow for every document
+     * @param sourceDocuments the documents to migrate
+     * @param consumer called with each migrated document
+     */
+    public void migrateAll(
+            final MigrationPlan migrationPlan,
+            final Stream<JsonNode> sourceDocuments,
+            final Consumer<JsonNode> consumer
+    ) {
+        final Iterator<List<JsonNode>> units = migrationPlan.usesBatchRules()
+                ? groups(sourceDocuments.iterator())
+                : sourceDocuments.map(List::of).iterator();
+        final int maxUnitsAhead = parallelism * 2;
+        final Deque<Future<List<JsonNode>>> pending = new ArrayDeque<>(maxUnitsAhead);
+        // only used when order isn't preserved (otherwise its queue would hold every result)
+        @Nullable final CompletionService<List<JsonNode>> completionService =
+                preserveOrder ? null : new ExecutorCompletionService<>(executor);
+        try {
+            while (units.hasNext()) {
+                if (pending.size() >= maxUnitsAhead) {
+                    nextResult(pending, completionService).forEach(consumer);
+                }
+                final List<JsonNode> unit = units.next();
+                pending.addLast(completionService == null
+                        ? executor.submit(() -> migrateUnit(migrationPlan, unit))
+                        : completionService.submit(() -> migrateUnit(migrationPlan, unit)));
+            }
+            while (!pending.isEmpty()) {
+                nextResult(pending, completionService).forEach(consumer);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /** Migrates a single document, or a group of them for a plan with BatchUpdateRules. */
+    private List<JsonNode> migrateUnit(final MigrationPlan migrationPlan, final List<JsonNode> unit) {
+        return migrationPlan.usesBatchRules()
+                ? migrator.migrateAll(migrationPlan, unit)
+                : List.of(migrator.migrate(migrationPlan, unit.get(0)));
+    }
+
+    /**
+     * Removes one of the pending futures and returns its result once it is done: the
+     * oldest if order is preserved (when completionService is null), otherwise whichever
+     * finishes first.
+     */
+    private static List<JsonNode> nextResult(
+            final Deque<Future<List<JsonNode>>> pending,
+            @Nullable final CompletionService<List<JsonNode>> completionService
+    ) {
+        try {
+            if (completionService == null) {
+                return pending.removeFirst().get();
+            }
+            final Future<List<JsonNode>> done = completionService.take();
+            pending.remove(done);
+            return done.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while migrating", err);
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to migrate", err.getCause());
+        }
+    }
+
+    /**
+     * Splits documents into consecutive groups of up to BATCH_SIZE. Each group is read
+     * from the source only when it is asked for.
+     */
+    private static Iterator<List<JsonNode>> groups(final Iterator<JsonNode> documents) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public List<JsonNode> next() {
+                final List<JsonNode> group = new ArrayList<>(BATCH_SIZE);
+                while (group.size() < BATCH_SIZE && documents.hasNext()) {
+                    group.add(documents.next());
+                }
+                return group;
+            }
+        };
+    }
+
+    /**
+     * Shuts down the ForkJoinPool this BatchMigrator created (after the work already
+     * started has finished). An ExecutorService passed in by the caller is left alone.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * An UpdateRule that populates many occurrences of a field with a single call, for
+ * rules that are far cheaper in bulk (such as ones that look up reference data). The
+ * Migrator gathers every occurrence of the field in a document (one per array element,
+ * if the field is inside an array) and, when migrating several documents together with
+ * {@link Migrator#migrateAll}, every occurrence in all of them, and then calls
+ * {@link #mapFields} once.
+ *
+ * <p>Since several occurrences may come from the same document, each one is described
+ * by its UpdateContext together with the object that will contain the field. The
+ * containing objects hold the source values (no step has changed them yet), but
+ * anything taken from them and included in a result must be copied, as they may be
+ * modified afterward.
+ */
+public interface BatchUpdateRule extends UpdateRule {
+
+    /**
+     * Returns the values to use for many occurrences of a field.
+     *
+     * @param updateContexts the UpdateContext for each occurrence
+     * @param containingObjects the object that will contain each occurrence of the field
+     * @param fieldToPopulate the name of the field being populated
+     * @return the value for each occurrence, in the same order; there must be exactly
+     *         one for each UpdateContext
+     */
+    List<JsonNode> mapFields(
+            List<UpdateContext> updateContexts,
+            List<JsonNode> containingObjects,
+            String fieldToPopulate
+    );
+
+    /**
+     * A BatchUpdateRule is always called through {@link #mapFields}, which needs the
+     * containing object as well.
+     */
+    @Override
+    default JsonNode mapField(final UpdateContext updateContext, final String fieldToPopulate) {
+        throw new RuntimeException(
+                "The BatchUpdateRule for '" + fieldToPopulate + "' must be called through mapFields().");
+    }
+}
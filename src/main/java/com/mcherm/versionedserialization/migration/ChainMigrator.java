@@ -0,0 +1,144 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mcherm.versionedserialization.schemadiff.DeltaComposer;
+import com.mcherm.versionedserialization.schemadiff.deltas.SchemaDeltas;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Migrates documents across a whole series of versions (for instance V1 to V2a to V2b),
+ * where the UpdateRules for each hop were written against the version just before it.
+ * A MigrationPlan is built once for each hop. Each document is then copied once (or not
+ * at all, if migrated in place) and every hop is applied to that same working document,
+ * so nothing is serialized or copied in between hops.
+ *
+ * <p>When none of the hops from a document's version onward call an UpdateRule, their
+ * SchemaDeltas are {@link DeltaComposer#compose composed} into a single plan instead, so
+ * the document is traversed only once and fields that were added and later dropped are
+ * never touched. (Hops with UpdateRules can't be composed this way because each rule
+ * expects to see the document as the previous hop left it.)
+ *
+ * <p>This is an immutable object and is safe to share between threads (provided the
+ * UpdateRules it contains are).
+ */
+public class ChainMigrator {
+    private final Migrator migrator;
+    private final List<SchemaInfo> versions;
+    private final List<MigrationPlan> hops;
+    /** For each source version, a single plan going all the way to the newest version, if there is one. */
+    private final List<Optional<MigrationPlan>> shortcuts;
+
+    /**
+     * Constructor.
+     *
+     * @param versions the schemas for each version, from oldest to newest
+     * @param updateRules the rules for each hop; the rules at index i are for migrating
+     *                    from versions[i] to versions[i+1], so there must be one fewer
+     *                    of these than there are versions
+     */
+    public ChainMigrator(final List<SchemaInfo> versions, final List<UpdateRules> updateRules) {
+        this(new Migrator(), versions, updateRules);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param migrator the Migrator to use for each hop
+     * @param versions the schemas for each version, from oldest to newest
+     * @param updateRules the rules for each hop; the rules at index i are for migrating
+     *                    from versions[i] to versions[i+1], so there must be one fewer
+     *                    of these than there are versions
+     */
+    public ChainMigrator(
+            final Migrator migrator,
+            final List<SchemaInfo> versions,
+            final List<UpdateRules> updateRules
+    ) {
+        if (versions.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one version.");
+        }
+        if (updateRules.size() != versions.size() - 1) {
+            throw new IllegalArgumentException(
+                    "Expected " + (versions.size() - 1) + " UpdateRules but got " + updateRules.size() + ".");
+        }
+        this.migrator = migrator;
+        this.versions = List.copyOf(versions);
+        final List<MigrationPlan> plans = new ArrayList<>();
+        for (int i = 0; i < updateRules.size(); i++) {
+            plans.add(new MigrationPlan(versions.get(i), versions.get(i + 1), updateRules.get(i)));
+        }
+        this.hops = Collections.unmodifiableList(plans);
+        final List<Optional<MigrationPlan>> shortcutPlans = new ArrayList<>();
+        for (int i = 0; i < hops.size(); i++) {
+            shortcutPlans.add(composeHops(i));
+        }
+        this.shortcuts = Collections.unmodifiableList(shortcutPlans);
+    }
+
+    /**
+     * Returns a single plan that does the work of all the hops from the given version to
+     * the newest one, or Empty if any of those hops use UpdateRules (or if there's only
+     * one hop, so there would be no point).
+     */
+    private Optional<MigrationPlan> composeHops(final int sourceVersion) {
+        final List<MigrationPlan> hopsToCompose = hops.subList(sourceVersion, hops.size());
+        if (hopsToCompose.size() < 2 || hopsToCompose.stream().anyMatch(MigrationPlan::requiresWholeDocument)) {
+            return Optional.empty();
+        }
+        final SchemaDeltas composedDeltas = DeltaComposer.compose(
+                versions.subList(sourceVersion, versions.size()),
+                hopsToCompose.stream().map(MigrationPlan::getSchemaDeltas).toList());
+        return Optional.of(new MigrationPlan(
+                versions.get(sourceVersion), versions.getLast(), composedDeltas, new UpdateRules(Map.of())));
+    }
+
+    /** The schemas for each version, from oldest to newest. */
+    public List<SchemaInfo> getVersions() {
+        return versions;
+    }
+
+    /** The plan for each hop; the plan at index i migrates from version i to version i+1. */
+    public List<MigrationPlan> getHops() {
+        return hops;
+    }
+
+    /**
+     * Migrates a document from the given version to the newest version. The source
+     * document is not modified.
+     *
+     * @param sourceDocument a JSON document
+     * @param sourceVersion the index (within the list of versions) of the document's version
+     * @return the document in the newest version
+     */
+    public JsonNode migrate(final JsonNode sourceDocument, final int sourceVersion) {
+        return migrateInPlace(sourceDocument.deepCopy(), sourceVersion);
+    }
+
+    /**
+     * Migrates a document from the given version to the newest version by modifying it
+     * directly, as with {@link Migrator#migrateInPlace}. The UpdateRules of each hop see
+     * the document as the previous hop left it.
+     *
+     * @param document a JSON document. THIS GETS MODIFIED.
+     * @param sourceVersion the index (within the list of versions) of the document's version
+     * @return the same document, which is now in the newest version
+     */
+    public JsonNode migrateInPlace(final JsonNode document, final int sourceVersion) {
+        if (sourceVersion < 0 || sourceVersion >= versions.size()) {
+            throw new IllegalArgumentException("There is no version " + sourceVersion + ".");
+        }
+        if (sourceVersion < shortcuts.size() && shortcuts.get(sourceVersion).isPresent()) {
+            return migrator.migrateInPlace(shortcuts.get(sourceVersion).get(), document);
+        }
+        for (MigrationPlan hop : hops.subList(sourceVersion, hops.size())) {
+            migrator.migrateInPlace(hop, document);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,182 @@
+package com.mcherm.versionedserialization.migration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Migrates a directory tree where each file holds one JSON document. Each file is
+ * migrated on its own virtual thread with a {@link StreamingMigrator}, so a thread that
+ * is waiting on the disk costs almost nothing, and a Semaphore limits how many files
+ * are open at once. The same MigrationPlan is shared by every file.
+ *
+ * <p>Each output file is first written to a temporary file in the same directory and
+ * then renamed into place, so a reader never sees a half-written file (and the target
+ * directory may be the same as the source directory). A file that fails to migrate is
+ * recorded in the {@link Report} rather than stopping the others. When the plan is an
+ * identity the bytes are copied across unparsed, and files being migrated in place are
+ * left alone.
+ */
+public class DirectoryMigrator {
+
+    /**
+     * What happened when a directory was migrated.
+     *
+     * @param filesMigrated the number of files successfully migrated
+     * @param bytesRead the total size of the source files successfully migrated
+     * @param bytesWritten the total size of the files written
+     * @param elapsed how long the whole migration took
+     * @param failures the exception for each source file that could not be migrated
+     */
+    public record Report(
+            int filesMigrated,
+            long bytesRead,
+            long bytesWritten,
+            Duration elapsed,
+            Map<Path, Exception> failures
+    ) {
+        /** Returns the number of files migrated per second. */
+        public double filesPerSecond() {
+            return filesMigrated / secondsElapsed();
+        }
+
+        /** Returns the number of source bytes migrated per second. */
+        public double bytesPerSecond() {
+            return bytesRead / secondsElapsed();
+        }
+
+        private double secondsElapsed() {
+            return Math.max(elapsed.toNanos(), 1) / 1_000_000_000.0;
+        }
+    }
+
+    private final StreamingMigrator streamingMigrator;
+    private final int maxOpenFiles;
+
+    /**
+     * Constructor.
+     *
+     * @param maxOpenFiles the most files that will be migrated at the same time
+     */
+    public DirectoryMigrator(final int maxOpenFiles) {
+        this(new StreamingMigrator(), maxOpenFiles);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param streamingMigrator the StreamingMigrator to use for each file
+     * @param maxOpenFiles the most files that will be migrated at the same time
+     */
+    public DirectoryMigrator(final StreamingMigrator streamingMigrator, final int maxOpenFiles) {
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("maxOpenFiles must be at least 1");
+        }
+        this.streamingMigrator = streamingMigrator;
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * Migrates every regular file beneath sourceDirectory, writing each result to the
+     * same relative location beneath targetDirectory (creating directories as needed).
+     * This returns once every file has been dealt with.
+     *
+     * @param migrationPlan the plan to follow for every file
+     * @param sourceDirectory the directory to read documents from
+     * @param targetDirectory the directory to write documents to; may be the same as
+     *                        sourceDirectory, in which case the files are replaced
+     * @return a Report of what was done
+     * @throws IOException if the source directory can't be listed
+     */
+    public Report migrate(
+            final MigrationPlan migrationPlan,
+            final Path sourceDirectory,
+            final Path targetDirectory
+    ) throws IOException {
+        final List<Path> sourceFiles;
+        try (Stream<Path> paths = Files.walk(sourceDirectory)) {
+            sourceFiles = paths.filter(Files::isRegularFile).toList();
+        }
+
+        final long startTime = System.nanoTime();
+        final AtomicInteger filesMigrated = new AtomicInteger();
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong bytesWritten = new AtomicLong();
+        final Map<Path, Exception> failures = new ConcurrentHashMap<>();
+        final Semaphore openFiles = new Semaphore(maxOpenFiles);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path sourceFile : sourceFiles) {
+                try {
+                    openFiles.acquire();
+                } catch (InterruptedException err) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while migrating " + sourceDirectory);
+                }
+                final Path targetFile = targetDirectory.resolve(sourceDirectory.relativize(sourceFile).toString());
+                executor.execute(() -> {
+                    try {
+                        final long sourceSize = Files.size(sourceFile);
+                        if (!(migrationPlan.isIdentity() && sourceFile.equals(targetFile))) {
+                            bytesWritten.addAndGet(migrateFile(migrationPlan, sourceFile, targetFile));
+                        }
+                        bytesRead.addAndGet(sourceSize);
+                        filesMigrated.incrementAndGet();
+                    } catch (IOException | RuntimeException err) {
+                        failures.put(sourceFile, err);
+                    } finally {
+                        openFiles.release();
+                    }
+                });
+            }
+        }
+        return new Report(
+                filesMigrated.get(),
+                bytesRead.get(),
+                bytesWritten.get(),
+                Duration.ofNanos(System.nanoTime() - startTime),
+                Map.copyOf(failures));
+    }
+
+    /**
+     * Migrates one file, writing a temporary file beside the target and then moving it
+     * into place. Returns the size of the file written.
+     */
+    private long migrateFile(
+            final MigrationPlan migrationPlan,
+            final Path sourceFile,
+            final Path targetFile
+    ) throws IOException {
+        final Path targetParent = targetFile.toAbsolutePath().getParent();
+        Files.createDirectories(targetParent);
+        final Path tempFile = Files.createTempFile(targetParent, targetFile.getFileName().toString(), ".tmp");
+        try {
+            try (
+                    final InputStream source = new BufferedInputStream(Files.newInputStream(sourceFile));
+                    final OutputStream target = new BufferedOutputStream(Files.newOutputStream(tempFile))
+            ) {
+                streamingMigrator.migrate(migrationPlan, source, target);
+            }
+            final long size = Files.size(tempFile);
+            Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A read-only view of what a source document will look like once it is migrated, which
+ * does only the work needed to answer the questions actually asked of it. Reading a
+ * field applies only the steps of the MigrationPlan that lie on the path to that field
+ * (or beneath it), and an UpdateRule is only called when someone reads the field it
+ * populates. The fully migrated document is still available from {@link #materialize()}.
+ *
+ * <p>The values returned share structure with the source document and must not be
+ * modified. This object is not safe to use from more than one thread at a time.
+ */
+public class LazyMigratedDocument {
+    private final Migrator migrator;
+    private final MigrationPlan migrationPlan;
+    private final JsonNode sourceDocument;
+    private final UpdateContext updateContext;
+    /** Fields already read, so each is worked out only once. */
+    private final Map<String, Optional<JsonNode>> fieldValues = new HashMap<>();
+    /** The values produced by steps, so each rule is called at most once. */
+    private final Map<MigrationStep, Optional<JsonNode>> stepValues = new HashMap<>();
+    @Nullable
+    private JsonNode materialized = null;
+
+    /**
+     * Constructor.
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceDocument a JSON document in the plan's source format. It must not be
+     *                       modified while this view is in use.
+     */
+    public LazyMigratedDocument(final MigrationPlan migrationPlan, final JsonNode sourceDocument) {
+        this(new Migrator(), migrationPlan, sourceDocument);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param migrator the Migrator to use when a whole subtree needs migrating
+     * @param migrationPlan the plan to follow
+     * @param sourceDocument a JSON document in the plan's source format. It must not be
+     *                       modified while this view is in use.
+     */
+    public LazyMigratedDocument(
+            final Migrator migrator,
+            final MigrationPlan migrationPlan,
+            final JsonNode sourceDocument
+    ) {
+        this.migrator = migrator;
+        this.migrationPlan = migrationPlan;
+        this.sourceDocument = sourceDocument;
+        this.updateContext = new UpdateContext(
+                migrationPlan.getSourceSchema(), migrationPlan.getTargetSchema(), sourceDocument);
+    }
+
+    /**
+     * Returns the value a field will have in the migrated document, or Empty if the
+     * migrated document won't have that field.
+     *
+     * <p>For now, paths with square brackets in them are not supported; read the array
+     * itself instead.
+     *
+     * @param fieldName the "/"-separated path to the field
+     * @return the value of that field in the migrated document, or Empty
+     */
+    public Optional<JsonNode> get(final String fieldName) {
+        return get(FieldPath.of(fieldName));
+    }
+
+    /**
+     * Same as {@link #get(String)}, but for a field whose path has already been split.
+     *
+     * @param fieldPath the path to the field
+     * @return the value of that field in the migrated document, or Empty
+     */
+    public Optional<JsonNode> get(final FieldPath fieldPath) {
+        if (materialized != null) {
+            return Optional.ofNullable(fieldPath.find(materialized));
+        }
+        final Optional<JsonNode> known = fieldValues.get(fieldPath.getFieldName());
+        if (known != null) {
+            return known;
+        }
+        final Optional<JsonNode> value = fieldPath.hasArraySteps()
+                ? Optional.empty()
+                : computeField(fieldPath);
+        fieldValues.put(fieldPath.getFieldName(), value);
+        return value;
+    }
+
+    /**
+     * Returns the entire migrated document, the same as
+     * {@link Migrator#migrate(MigrationPlan, JsonNode)} would. This is only worked out
+     * once.
+     *
+     * @return the migrated document
+     */
+    public JsonNode materialize() {
+        if (materialized == null) {
+            materialized = migrator.migrate(migrationPlan, sourceDocument);
+        }
+        return materialized;
+    }
+
+    /**
+     * Walks down the path in the source document and the plan's PathTrie together,
+     * applying any step found along the way. If there are still steps beneath the field
+     * once we reach it, a copy of the field's value is migrated.
+     */
+    private Optional<JsonNode> computeField(final FieldPath fieldPath) {
+        PathTrie.Node trieNode = migrationPlan.getPathTrie().getRoot();
+        JsonNode value = sourceDocument;
+        for (int i = 0; i < fieldPath.size(); i++) {
+            final String component = fieldPath.getComponent(i);
+            final MigrationStep step = trieNode == null ? null : trieNode.getLeafStep(component);
+            if (step != null) {
+                final Optional<JsonNode> stepValue = applyStep(step, value);
+                if (stepValue.isEmpty()) {
+                    return Optional.empty();
+                }
+                value = stepValue.get();
+            } else {
+                if (!value.isObject()) {
+                    return Optional.empty();
+                }
+                value = value.get(component);
+                if (value == null) {
+                    return Optional.empty();
+                }
+            }
+            trieNode = trieNode == null ? null : trieNode.getChild(component);
+        }
+        if (trieNode != null) {
+            final JsonNode migratedValue = value.deepCopy();
+            migrator.applySubtree(updateContext, trieNode, migratedValue);
+            return Optional.of(migratedValue);
+        }
+        return Optional.of(value);
+    }
+
+    /**
+     * Returns the value a step gives its field (or Empty if it drops the field), given
+     * the source object that contains the field.
+     */
+    private Optional<JsonNode> applyStep(final MigrationStep step, final JsonNode containingObject) {
+        return stepValues.computeIfAbsent(step, x -> switch (step.getAction()) {
+            case DROP -> Optional.empty();
+            case SET_DEFAULT -> Optional.of(Migrator.defaultValueOf(step));
+            case APPLY_RULE -> {
+                final UpdateRule updateRule = step.getUpdateRule();
+                assert updateRule != null;
+                yield Optional.ofNullable(updateRule instanceof BatchUpdateRule batchUpdateRule
+                        ? batchUpdateRule.mapFields(
+                                List.of(updateContext), List.of(containingObject), step.getFieldName()).getFirst()
+                        : updateRule.mapField(updateContext, step.getFieldName()));
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps the PureUpdateRule for one field, remembering the results for the most recently
+ * used sets of input values. It is safe to use from several threads at once; the rule
+ * itself is called outside the lock, so two threads may occasionally both calculate
+ * the same result.
+ */
+final class MemoizedUpdateRule implements UpdateRule {
+    private final PureUpdateRule pureUpdateRule;
+    private final FieldPath[] sourcePaths;
+    /** Results keyed on the source values, least recently used first. Guarded by itself. */
+    private final Map<List<JsonNode>, JsonNode> results;
+
+    MemoizedUpdateRule(final PureUpdateRule pureUpdateRule) {
+        this.pureUpdateRule = pureUpdateRule;
+        this.sourcePaths = pureUpdateRule.getSourcePaths().stream().map(FieldPath::of).toArray(FieldPath[]::new);
+        final int maxCachedResults = pureUpdateRule.getMaxCachedResults();
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<JsonNode>, JsonNode> eldest) {
+                return size() > maxCachedResults;
+            }
+        };
+    }
+
+    /** Returns the paths of the source values the rule reads. */
+    FieldPath[] getSourcePaths() {
+        return sourcePaths;
+    }
+
+    @Override
+    public JsonNode mapField(final UpdateContext updateContext, final String fieldToPopulate) {
+        final JsonNode[] sourceValues = updateContext.getSourceValues(sourcePaths);
+        final List<JsonNode> key = new ArrayList<>(sourceValues.length);
+        for (JsonNode sourceValue : sourceValues) {
+            key.add(sourceValue == null ? MissingNode.getInstance() : sourceValue);
+        }
+        JsonNode result;
+        synchronized (results) {
+            result = results.get(key);
+        }
+        if (result == null) {
+            result = pureUpdateRule.mapField(updateContext, fieldToPopulate);
+            if (result == null) {
+                return null;
+            }
+            result = copyIfMutable(result);
+            final List<JsonNode> storedKey = key.stream().map(MemoizedUpdateRule::copyIfMutable).toList();
+            synchronized (results) {
+                results.put(storedKey, result);
+            }
+        }
+        return copyIfMutable(result);
+    }
+
+    /** Objects and arrays are copied so that no document shares them with the cache. */
+    private static JsonNode copyIfMutable(final JsonNode node) {
+        return node.isContainerNode() ? node.deepCopy() : node;
+    }
+
+    @Override
+    public String toString() {
+        return "Memoized(" + pureUpdateRule + ")";
+    }
+}
@@ -0,0 +1,21 @@
+package com.mcherm.versionedserialization.migration;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Put on a class to have {@link MigratorProcessor} generate, at compile time, a migrator
+ * class for reading JSON written for each of the given older classes into the format of
+ * this one. For {@code @MigratesFrom(SimpleV1.class)} on SimpleV2a, the generated class
+ * is {@code SimpleV2aFromSimpleV1Migrator}, in the same package as SimpleV2a.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface MigratesFrom {
+    /** The older classes that JSON might have been written for. */
+    Class<?>[] value();
+}
@@ -0,0 +1,158 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.schemadiff.SchemaParser;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Jackson Module that lets an ObjectMapper read JSON written in an older format
+ * directly into the current version of a class. For each class registered with
+ * {@link #addSourceVersion}, the class's normal deserializer is wrapped in one which
+ * migrates the tokens as they are read, following the MigrationPlan: dropped properties
+ * are skipped and defaulted ones are filled in, without building a JsonNode tree. (If
+ * the plan has UpdateRules, those need to see the whole value, so that one value is
+ * read into a tree and migrated in place before being bound.) A subtype of a
+ * polymorphic class can be registered too; Jackson reads the type id before handing the
+ * rest of the object over, and the rest is migrated as an object.
+ *
+ * <p>An ObjectMapper with this module registered assumes that EVERY value of a
+ * registered class it reads is in the older format, wherever it appears in the
+ * document. All registration must be done before the module is registered with an
+ * ObjectMapper.
+ */
+public class MigrationModule extends SimpleModule {
+    private final Map<Class<?>, MigrationPlan> migrationPlans = new HashMap<>();
+    private final Migrator migrator = new Migrator();
+    private final StreamingMigrator streamingMigrator = new StreamingMigrator(migrator);
+
+    /** Constructor. */
+    public MigrationModule() {
+        super(MigrationModule.class.getSimpleName());
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(
+                    final DeserializationConfig config,
+                    final BeanDescription beanDesc,
+                    final JsonDeserializer<?> deserializer
+            ) {
+                final MigrationPlan migrationPlan = migrationPlans.get(beanDesc.getBeanClass());
+                return migrationPlan == null || migrationPlan.isIdentity()
+                        ? deserializer
+                        : new MigratingDeserializer(deserializer, migrationPlan);
+            }
+        });
+    }
+
+    /**
+     * Returns an id unique to this instance. Jackson skips any module whose type id it
+     * has already registered, so with a shared id a second MigrationModule registered on
+     * the same ObjectMapper would silently do nothing.
+     */
+    @Override
+    public Object getTypeId() {
+        return getModuleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * Registers a class whose values should be read from an older format.
+     *
+     * @param targetClass the class being read; the plan's target schema must be its schema
+     * @param migrationPlan the plan for migrating from the older format to targetClass
+     * @return this module, so calls can be chained
+     */
+    public MigrationModule addSourceVersion(final Class<?> targetClass, final MigrationPlan migrationPlan) {
+        if (migrationPlans.containsKey(targetClass)) {
+            throw new RuntimeException("A source version was already added for " + targetClass.getName());
+        }
+        migrationPlans.put(targetClass, migrationPlan);
+        return this;
+    }
+
+    /**
+     * Registers a class whose values should be read from an older format, building the
+     * MigrationPlan from the schema of the class.
+     *
+     * @param targetClass the class being read
+     * @param sourceSchema the schema of the older format
+     * @param updateRules the rules needed to migrate from sourceSchema to targetClass
+     * @return this module, so calls can be chained
+     */
+    public MigrationModule addSourceVersion(
+            final Class<?> targetClass,
+            final SchemaInfo sourceSchema,
+            final UpdateRules updateRules
+    ) throws UnsupportedSchemaFeature {
+        final SchemaInfo targetSchema = SchemaParser.parse(SerializationUtil.generateSchema(targetClass));
+        return addSourceVersion(targetClass, new MigrationPlan(sourceSchema, targetSchema, updateRules));
+    }
+
+    /**
+     * A deserializer which migrates the value it is given and then passes it on to the
+     * class's normal deserializer.
+     */
+    private class MigratingDeserializer extends DelegatingDeserializer {
+        private final MigrationPlan migrationPlan;
+
+        MigratingDeserializer(final JsonDeserializer<?> delegatee, final MigrationPlan migrationPlan) {
+            super(delegatee);
+            this.migrationPlan = migrationPlan;
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(final JsonDeserializer<?> newDelegatee) {
+            return new MigratingDeserializer(newDelegatee, migrationPlan);
+        }
+
+        @Override
+        public Object deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+            try (final JsonParser migrated = migrate(p, ctxt)) {
+                return _delegatee.deserialize(migrated, ctxt);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object deserialize(
+                final JsonParser p,
+                final DeserializationContext ctxt,
+                final Object intoValue
+        ) throws IOException {
+            try (final JsonParser migrated = migrate(p, ctxt)) {
+                return ((JsonDeserializer<Object>) _delegatee).deserialize(migrated, ctxt, intoValue);
+            }
+        }
+
+        /**
+         * Reads one value from the parser and returns a parser, positioned on its first
+         * token, for the migrated value.
+         */
+        private JsonParser migrate(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+            final JsonParser migrated;
+            if (migrationPlan.requiresWholeDocument()) {
+                final JsonNode value = ctxt.readTree(p);
+                migrated = migrator.migrateInPlace(migrationPlan, value).traverse(p.getCodec());
+            } else {
+                final TokenBuffer buffer = ctxt.bufferForInputBuffering(p);
+                streamingMigrator.migrate(migrationPlan, p, buffer);
+                migrated = buffer.asParser(p);
+            }
+            migrated.nextToken();
+            return migrated;
+        }
+    }
+}
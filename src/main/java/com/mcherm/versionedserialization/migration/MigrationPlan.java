@@ -0,0 +1,190 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mcherm.versionedserialization.schemadiff.SchemaDiffer;
+import com.mcherm.versionedserialization.schemadiff.deltas.Delta;
+import com.mcherm.versionedserialization.schemadiff.deltas.SchemaDeltas;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Everything needed to migrate documents from one schema to another, worked out once
+ * so it can be reused for any number of documents. Building a plan diffs the two
+ * schemas, splits each field name into its path segments, and looks up the UpdateRule
+ * for each Delta; {@link Migrator#migrate(MigrationPlan, com.fasterxml.jackson.databind.JsonNode)}
+ * then only has to walk the document.
+ *
+ * <p>This is an immutable object and is safe to share between threads (provided the
+ * UpdateRules it contains are).
+ */
+public class MigrationPlan {
+    private final SchemaInfo sourceSchema;
+    private final SchemaInfo targetSchema;
+    private final SchemaDeltas schemaDeltas;
+    private final List<MigrationStep> steps;
+    private final PathTrie pathTrie;
+    private final boolean requiresWholeDocument;
+    private final boolean usesBatchRules;
+    private final FieldPath[] prefetchPaths;
+
+    /**
+     * Constructor. If a Delta requires customization and the updateRules don't provide
+     * an UpdateRule for it, this throws an exception.
+     *
+     * @param sourceSchema schema for the source documents
+     * @param targetSchema schema we want the target documents to take on
+     * @param updateRules collection of UpdateRules to use
+     */
+    public MigrationPlan(
+            final SchemaInfo sourceSchema,
+            final SchemaInfo targetSchema,
+            final UpdateRules updateRules
+    ) {
+        this(sourceSchema, targetSchema, diff(sourceSchema, targetSchema), updateRules);
+    }
+
+    /**
+     * Diffs two schemas, except that when they are the same (as when a document is already
+     * in the current version) there's nothing to work out. Schemas with different
+     * fingerprints are never the same, so equals() is only needed when they match.
+     */
+    private static SchemaDeltas diff(final SchemaInfo sourceSchema, final SchemaInfo targetSchema) {
+        if (sourceSchema.getFingerprint().equals(targetSchema.getFingerprint()) && sourceSchema.equals(targetSchema)) {
+            return new SchemaDeltas();
+        }
+        return SchemaDiffer.diff(sourceSchema, targetSchema);
+    }
+
+    /**
+     * Constructor for when the SchemaDeltas have already been worked out (for instance, by
+     * {@link com.mcherm.versionedserialization.schemadiff.DeltaComposer composing} the
+     * deltas of several versions). If a Delta requires customization and the updateRules
+     * don't provide an UpdateRule for it, this throws an exception.
+     *
+     * @param sourceSchema schema for the source documents
+     * @param targetSchema schema we want the target documents to take on
+     * @param schemaDeltas the changes that take a document from sourceSchema to targetSchema
+     * @param updateRules collection of UpdateRules to use
+     */
+    public MigrationPlan(
+            final SchemaInfo sourceSchema,
+            final SchemaInfo targetSchema,
+            final SchemaDeltas schemaDeltas,
+            final UpdateRules updateRules
+    ) {
+        this.sourceSchema = sourceSchema;
+        this.targetSchema = targetSchema;
+        this.schemaDeltas = schemaDeltas;
+        final List<MigrationStep> compiledSteps = new ArrayList<>();
+        for (Delta delta : schemaDeltas.getDeltas()) {
+            compiledSteps.add(new MigrationStep(delta, updateRules.getUpdateRule(delta.getFieldName()).orElse(null)));
+        }
+        this.steps = Collections.unmodifiableList(compiledSteps);
+        this.pathTrie = new PathTrie(steps);
+        this.requiresWholeDocument = steps.stream()
+                .anyMatch(step -> step.getAction() == MigrationStep.Action.APPLY_RULE);
+        this.usesBatchRules = steps.stream()
+                .anyMatch(step -> step.getUpdateRule() instanceof BatchUpdateRule);
+        final Set<FieldPath> declaredPaths = new LinkedHashSet<>();
+        for (MigrationStep step : steps) {
+            if (step.getUpdateRule() instanceof MemoizedUpdateRule memoizedUpdateRule) {
+                declaredPaths.addAll(Arrays.asList(memoizedUpdateRule.getSourcePaths()));
+            }
+        }
+        this.prefetchPaths = declaredPaths.toArray(FieldPath[]::new);
+    }
+
+    public SchemaInfo getSourceSchema() {
+        return sourceSchema;
+    }
+
+    public SchemaInfo getTargetSchema() {
+        return targetSchema;
+    }
+
+    public SchemaDeltas getSchemaDeltas() {
+        return schemaDeltas;
+    }
+
+    /** The steps to perform, in the same order as the Deltas they came from. */
+    public List<MigrationStep> getSteps() {
+        return steps;
+    }
+
+    /** The steps organized by path. */
+    PathTrie getPathTrie() {
+        return pathTrie;
+    }
+
+    /**
+     * Returns true if some step calls an UpdateRule. UpdateRules are passed an UpdateContext
+     * that gives them access to the entire source document, so such a plan can't be
+     * applied while streaming through the document.
+     */
+    public boolean requiresWholeDocument() {
+        return requiresWholeDocument;
+    }
+
+    /**
+     * Returns true if this plan has no steps at all, so a document in the source format
+     * is already in the target format and needs no work.
+     */
+    public boolean isIdentity() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Returns true if any of the UpdateRules is a BatchUpdateRule, in which case it pays
+     * to migrate documents several at a time with {@link Migrator#migrateAll}.
+     */
+    public boolean usesBatchRules() {
+        return usesBatchRules;
+    }
+
+    /**
+     * The source paths read by the plan's PureUpdateRules, which can be looked up in a
+     * single pass through each document before any rule is called.
+     */
+    FieldPath[] getPrefetchPaths() {
+        return prefetchPaths;
+    }
+
+    /**
+     * Creates the UpdateContext for migrating one document with this plan, with the
+     * values its PureUpdateRules read already looked up.
+     *
+     * @param sourceDocument the document in the source format
+     * @param inPlace true if the sourceDocument itself is going to be migrated
+     */
+    UpdateContext newUpdateContext(final JsonNode sourceDocument, final boolean inPlace) {
+        final UpdateContext updateContext = new UpdateContext(
+                sourceSchema, targetSchema, sourceDocument, inPlace ? pathTrie : null);
+        updateContext.prefetch(prefetchPaths);
+        return updateContext;
+    }
+
+    /**
+     * Makes an UpdateContext that is no longer in use ready for migrating another
+     * document with this plan, the same as {@link #newUpdateContext} would.
+     *
+     * @param updateContext the context to reuse
+     * @param sourceDocument the document in the source format
+     * @param inPlace true if the sourceDocument itself is going to be migrated
+     */
+    void resetUpdateContext(final UpdateContext updateContext, final JsonNode sourceDocument, final boolean inPlace) {
+        updateContext.reset(sourceSchema, targetSchema, sourceDocument, inPlace ? pathTrie : null);
+        updateContext.prefetch(prefetchPaths);
+    }
+
+    @Override
+    public String toString() {
+        return "MigrationPlan" + steps;
+    }
+}
@@ -0,0 +1,144 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Flow.Processor} that migrates each document it receives with one
+ * MigrationPlan and publishes the results. Documents are migrated in place, so the
+ * publisher upstream must not use them again.
+ *
+ * <p>At most {@code workers} documents are requested from upstream and not yet
+ * published at any time; another is requested only once a result has been handed on.
+ * Each subscriber gets a buffer of {@code bufferSize} results, and when that is full a
+ * worker waits before publishing more, so a slow subscriber slows down the whole chain
+ * instead of letting results pile up in memory. As long as there is room in the
+ * buffers every worker is kept busy. Results may be published in a different order from
+ * the documents that were received.
+ *
+ * <p>If a migration fails, the subscription upstream is cancelled and subscribers get
+ * the exception through onError. If every subscriber cancels, the subscription upstream
+ * is cancelled too and the workers are stopped.
+ */
+public class MigrationProcessor extends SubmissionPublisher<JsonNode> implements Flow.Processor<JsonNode, JsonNode> {
+    private final Migrator migrator;
+    private final MigrationPlan migrationPlan;
+    private final int workers;
+    private final ExecutorService workerPool;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean upstreamDone = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile Flow.Subscription subscription;
+
+    /**
+     * Constructor.
+     *
+     * @param migrationPlan the plan to follow for every document
+     * @param workers the number of documents to migrate at the same time
+     * @param bufferSize the number of results buffered for each subscriber
+     */
+    public MigrationProcessor(final MigrationPlan migrationPlan, final int workers, final int bufferSize) {
+        this(new Migrator(), migrationPlan, workers, bufferSize);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param migrator the Migrator to use for each document
+     * @param migrationPlan the plan to follow for every document
+     * @param workers the number of documents to migrate at the same time
+     * @param bufferSize the number of results buffered for each subscriber
+     */
+    public MigrationProcessor(
+            final Migrator migrator,
+            final MigrationPlan migrationPlan,
+            final int workers,
+            final int bufferSize
+    ) {
+        super(ForkJoinPool.commonPool(), bufferSize);
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
+        this.migrator = migrator;
+        this.migrationPlan = migrationPlan;
+        this.workers = workers;
+        this.workerPool = Executors.newFixedThreadPool(
+                workers, Thread.ofPlatform().name("migration-worker-", 0).daemon().factory());
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(workers);
+    }
+
+    @Override
+    public void onNext(final JsonNode document) {
+        if (finished.get()) {
+            return; // after a failure, anything already on its way is ignored
+        }
+        inFlight.incrementAndGet();
+        workerPool.execute(() -> {
+            if (finished.get()) {
+                return;
+            }
+            final int lag;
+            try {
+                // submit() waits while any subscriber's buffer is full
+                lag = submit(migrator.migrateInPlace(migrationPlan, document));
+            } catch (RuntimeException err) {
+                subscription.cancel();
+                finish(err);
+                return;
+            }
+            if (lag == 0) {
+                // there are no subscribers left, so nothing more needs migrating
+                subscription.cancel();
+                finish(null);
+                return;
+            }
+            if (inFlight.decrementAndGet() == 0 && upstreamDone.get()) {
+                finish(null);
+            } else {
+                subscription.request(1);
+            }
+        });
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        finish(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone.set(true);
+        if (inFlight.get() == 0) {
+            finish(null);
+        }
+    }
+
+    /** Closes this publisher (normally if error is null) and stops the workers, once only. */
+    private void finish(@Nullable final Throwable error) {
+        if (finished.compareAndSet(false, true)) {
+            if (error == null) {
+                close();
+            } else {
+                closeExceptionally(error);
+            }
+            workerPool.shutdown();
+        }
+    }
+}
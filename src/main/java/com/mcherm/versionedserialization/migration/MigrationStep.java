@@ -0,0 +1,143 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mcherm.versionedserialization.schemadiff.deltas.Change;
+import com.mcherm.versionedserialization.schemadiff.deltas.CustomAdd;
+import com.mcherm.versionedserialization.schemadiff.deltas.DefaultingAdd;
+import com.mcherm.versionedserialization.schemadiff.deltas.Delta;
+import com.mcherm.versionedserialization.schemadiff.deltas.Drop;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single Delta from a MigrationPlan, compiled into the form the Migrator needs:
+ * the field name already split into path segments and the UpdateRule (if any)
+ * already looked up.
+ *
+ * <p>This is an immutable value object.
+ */
+public final class MigrationStep {
+
+    /** The kind of work a step performs, decided once when the plan is built. */
+    public enum Action {
+        /** Remove the field. */
+        DROP,
+        /** Set the field to the default value from the DefaultingAdd. */
+        SET_DEFAULT,
+        /** Set the field to whatever the UpdateRule returns. */
+        APPLY_RULE
+    }
+
+    private final Delta delta;
+    private final Action action;
+    private final List<String[]> segments;
+    private final FieldPath fieldPath;
+    @Nullable
+    private final UpdateRule updateRule;
+    @Nullable
+    private final JsonNode defaultValue;
+
+    /**
+     * Constructor.
+     *
+     * @param delta the Delta this step performs
+     * @param rule the UpdateRule for this field, or null if there isn't one. Must be
+     *             non-null if the delta requires customization. A PureUpdateRule gets
+     *             its results memoized (unless it is also a BatchUpdateRule).
+     */
+    public MigrationStep(final Delta delta, @Nullable final UpdateRule rule) {
+        if (delta.requiresCustomization() && rule == null) {
+            throw new RuntimeException("No UpdateRule was provided for '" + delta.getFieldName() + "'.");
+        }
+        final UpdateRule updateRule = rule instanceof PureUpdateRule pureUpdateRule && !(rule instanceof BatchUpdateRule)
+                ? new MemoizedUpdateRule(pureUpdateRule)
+                : rule;
+        this.delta = delta;
+        this.segments = splitFieldName(delta.getFieldName());
+        this.fieldPath = FieldPath.of(delta.getFieldName());
+        switch (delta) {
+            case Drop drop -> {
+                this.action = Action.DROP;
+                this.updateRule = null;
+                this.defaultValue = null;
+            }
+            case DefaultingAdd defaultingAdd -> {
+                this.action = updateRule == null ? Action.SET_DEFAULT : Action.APPLY_RULE;
+                this.updateRule = updateRule;
+                this.defaultValue = defaultingAdd.getDefaultValue();
+            }
+            case CustomAdd customAdd -> {
+                this.action = Action.APPLY_RULE;
+                this.updateRule = updateRule;
+                this.defaultValue = null;
+            }
+            case Change change -> {
+                this.action = Action.APPLY_RULE;
+                this.updateRule = updateRule;
+                this.defaultValue = null;
+            }
+        }
+    }
+
+    /**
+     * Splits a field name like "shelf/boxes[]items[]color" first on "[]" (giving the
+     * arrays that must be iterated over) and then on "/" (giving the object fields to
+     * navigate within each of those).
+     */
+    private static List<String[]> splitFieldName(final String fieldName) {
+        final List<String[]> result = new ArrayList<>();
+        for (String arraySegment : fieldName.split("\\[]")) {
+            result.add(arraySegment.split("/"));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public Delta getDelta() {
+        return delta;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /** The field name as passed to UpdateRule.mapField(). */
+    public String getFieldName() {
+        return delta.getFieldName();
+    }
+
+    /**
+     * The field name split into segments. Every segment except the last is a path to an
+     * array whose elements must each be visited; the last segment is the path from there
+     * to the field itself. Each segment is already split into its "/"-separated components.
+     * The arrays returned must not be modified.
+     */
+    public List<String[]> getSegments() {
+        return segments;
+    }
+
+    /** The field name as a FieldPath. */
+    public FieldPath getFieldPath() {
+        return fieldPath;
+    }
+
+    /** The UpdateRule to call (which for a PureUpdateRule is a memoizing wrapper around it). */
+    @Nullable
+    public UpdateRule getUpdateRule() {
+        return updateRule;
+    }
+
+    /** The default value; only meaningful when the action is SET_DEFAULT. */
+    @Nullable
+    public JsonNode getDefaultValue() {
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + delta.getFieldName();
+    }
+}
@@ -1,26 +1,81 @@
 package com.mcherm.versionedserialization.migration;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.mcherm.versionedserialization.schemadiff.SchemaDiffer;
-import com.mcherm.versionedserialization.schemadiff.deltas.Delta;
-import com.mcherm.versionedserialization.schemadiff.deltas.Change;
-import com.mcherm.versionedserialization.schemadiff.deltas.CustomAdd;
-import com.mcherm.versionedserialization.schemadiff.deltas.DefaultingAdd;
-import com.mcherm.versionedserialization.schemadiff.deltas.Drop;
-import com.mcherm.versionedserialization.schemadiff.deltas.SchemaDeltas;
-import com.mcherm.versionedserialization.schemadiff.path.Lookup;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.schemadiff.schema.NormalSubschema;
+import com.mcherm.versionedserialization.schemadiff.schema.Properties;
 import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import com.mcherm.versionedserialization.schemadiff.schema.Subschema;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class containing a function to migrate a serialized object written for one schema to
  * the correct form for a new schema, following a set of UpdateRules.
+ *
+ * <p>A Migrator can optionally split very large arrays into pieces which are migrated
+ * in parallel (in the ForkJoinPool the caller is running in, or else the common pool).
+ * When that is turned on, the UpdateRules for fields inside such arrays may be called
+ * from several threads at once and must be safe for that.
+ *
+ * <p>A Migrator can also be told to reuse UpdateContexts: it keeps the contexts from
+ * each call of {@link #migrateAll} (or the other methods, which are built on it) and
+ * resets them for the documents of later calls, on whatever thread, instead of creating
+ * new ones. That saves work for plans with many UpdateRules, but it is only safe if no
+ * UpdateRule keeps the UpdateContext it was given after the call returns.
  */
 public class Migrator {
+    /** Arrays are split into pieces no bigger than this when migrated in parallel. */
+    private static final int PARALLEL_PIECE_SIZE = 1024;
+
+    private final int parallelArrayThreshold;
+    /** The contexts kept for reuse, or null if they aren't reused. */
+    @Nullable
+    private final UpdateContextPool updateContextPool;
+
+    /** Constructor for a Migrator that does all of its work on the calling thread. */
+    public Migrator() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelArrayThreshold arrays with at least this many elements have their
+     *                               elements migrated in parallel
+     */
+    public Migrator(final int parallelArrayThreshold) {
+        this(parallelArrayThreshold, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelArrayThreshold arrays with at least this many elements have their
+     *                               elements migrated in parallel
+     * @param reuseUpdateContexts true to reset and reuse the UpdateContexts from earlier
+     *                            calls
+     */
+    public Migrator(final int parallelArrayThreshold, final boolean reuseUpdateContexts) {
+        if (parallelArrayThreshold < 1) {
+            throw new IllegalArgumentException("parallelArrayThreshold must be at least 1");
+        }
+        this.parallelArrayThreshold = parallelArrayThreshold;
+        this.updateContextPool = reuseUpdateContexts ? new UpdateContextPool() : null;
+    }
 
     /**
      * This takes a source and target schema, a JSON document in the source format, and a
@@ -28,6 +83,10 @@ public class Migrator {
      * It applies the rules (as well as any changes that can be automatically derived from
      * the schemas) to produce an updated document in the target format.
      *
+     * <p>This works out a new MigrationPlan on every call. When migrating many documents
+     * between the same schemas, build the MigrationPlan once and call
+     * {@link #migrate(MigrationPlan, JsonNode)} instead.
+     *
      * @param sourceSchema schema for the source document
      * @param targetSchema schema we want the target document to take on
      * @param sourceDocument source JSON document
@@ -40,140 +99,678 @@ public class Migrator {
             final JsonNode sourceDocument,
             final UpdateRules updateRules
     ) {
-        final JsonNode destinationDocument = sourceDocument.deepCopy();
+        return migrate(new MigrationPlan(sourceSchema, targetSchema, updateRules), sourceDocument);
+    }
 
-        final UpdateContext updateContext = new UpdateContext(sourceSchema, targetSchema, sourceDocument);
-        final SchemaDeltas schemaDeltas = SchemaDiffer.diff(sourceSchema, targetSchema);
-        for (Delta delta : schemaDeltas.getDeltas()) {
-            final String fieldName = delta.getFieldName();
-            final Optional<UpdateRule> updateRule = updateRules.getUpdateRule(fieldName);
-            applyChange(updateContext, delta, updateRule, destinationDocument);
+    /**
+     * This takes a MigrationPlan and a JSON document in the plan's source format. It
+     * applies the steps of the plan to produce an updated document in the plan's target
+     * format. The source document is not modified, and the result never shares any
+     * nodes with it: the values UpdateRules return and the default values are copied
+     * as they are put in, so a rule may return a node from the source document.
+     *
+     * <p>If the plan {@link MigrationPlan#isIdentity() is an identity} there is nothing
+     * to do but copy the source document. (To avoid even that, use
+     * {@link #migrateInPlace}, which returns the document itself.)
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceDocument source JSON document
+     * @return the transformed target document
+     */
+    public JsonNode migrate(final MigrationPlan migrationPlan, final JsonNode sourceDocument) {
+        if (migrationPlan.isIdentity()) {
+            return sourceDocument.deepCopy();
         }
-        return destinationDocument;
+        return migrateAll(migrationPlan, List.of(sourceDocument)).getFirst();
     }
 
     /**
-     * This is passed a Delta and either an UpdateRule or Empty (and if the UpdateRule
-     * requires customization the updateRule will never be Empty). It is also passed a
-     * mutable destinationDocument.
+     * This takes a MigrationPlan and a JSON document in the plan's source format, and
+     * modifies that document so it is in the plan's target format. This avoids making
+     * a copy of the document, so it is the better choice when the caller will not need
+     * the source document afterward.
      * <p>
-     * The delta's fieldName may contain "[]" segments indicating arrays that need
-     * to be iterated over. This method splits on "[]" and delegates to
-     * {@link #applyAcrossArrays} to handle the recursion.
+     * All UpdateRules are called before the document is changed in any way. When a rule
+     * reads a value with {@link UpdateContext#getSourceValue} and the plan will later
+     * change something beneath that value, the rule is given a copy; only the values the
+     * rules actually read are ever copied.
      *
-     * @param updateContext an UpdateContext which can be used to call UpdateRule.mapField()
-     * @param delta the particular Delta to be processed
-     * @param updateRule either an UpdateRule that applies or Empty; and it will never be
-     *                   empty if the Delta requires customization.
-     * @param destinationDocument the new JSON document that is being constructed and which
-     *                            this method will modify.
+     * @param migrationPlan the plan to follow
+     * @param document a JSON document in the source format. THIS GETS MODIFIED.
+     * @return the same document, which is now in the target format
      */
-    private void applyChange(
-            final UpdateContext updateContext,
-            final Delta delta,
-            final Optional<UpdateRule> updateRule,
-            final JsonNode destinationDocument
+    public JsonNode migrateInPlace(final MigrationPlan migrationPlan, final JsonNode document) {
+        migrateAllInPlace(migrationPlan, List.of(document));
+        return document;
+    }
+
+    /**
+     * Migrates several documents which all use the same MigrationPlan. The source
+     * documents are not modified. This gives the same results as calling
+     * {@link #migrate(MigrationPlan, JsonNode)} on each, except that each
+     * {@link BatchUpdateRule} is called just once for all of the documents together.
+     * (As there, an identity plan returns copies of the source documents.)
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceDocuments source JSON documents
+     * @return the transformed target documents, in the same order
+     */
+    public List<JsonNode> migrateAll(final MigrationPlan migrationPlan, final List<JsonNode> sourceDocuments) {
+        if (migrationPlan.isIdentity()) {
+            final List<JsonNode> copies = new ArrayList<>(sourceDocuments.size());
+            for (JsonNode sourceDocument : sourceDocuments) {
+                copies.add(sourceDocument.deepCopy());
+            }
+            return copies;
+        }
+        final PathTrie.Node root = migrationPlan.getPathTrie().getRoot();
+        final List<JsonNode> destinationDocuments = new ArrayList<>(sourceDocuments.size());
+        final PendingWrites pendingWrites = new PendingWrites();
+        final List<UpdateContext> pooledContexts = new ArrayList<>();
+        try {
+            for (JsonNode sourceDocument : sourceDocuments) {
+                final JsonNode destinationDocument = sourceDocument.deepCopy();
+                final UpdateContext updateContext =
+                        newUpdateContext(migrationPlan, sourceDocument, false, pooledContexts);
+                callRules(updateContext, root, destinationDocument, pendingWrites);
+                destinationDocuments.add(destinationDocument);
+            }
+            pendingWrites.callBatchRules();
+        } finally {
+            releaseUpdateContexts(pooledContexts);
+        }
+        for (JsonNode destinationDocument : destinationDocuments) {
+            applyChanges(root, destinationDocument);
+        }
+        pendingWrites.write();
+        return destinationDocuments;
+    }
+
+    /**
+     * Migrates several documents in place, as with {@link #migrateInPlace}, calling each
+     * {@link BatchUpdateRule} just once for all of the documents together.
+     *
+     * @param migrationPlan the plan to follow
+     * @param documents JSON documents in the source format. THESE GET MODIFIED.
+     * @return the same documents, which are now in the target format
+     */
+    public List<JsonNode> migrateAllInPlace(final MigrationPlan migrationPlan, final List<JsonNode> documents) {
+        if (migrationPlan.isIdentity()) {
+            return documents;
+        }
+        final PathTrie.Node root = migrationPlan.getPathTrie().getRoot();
+        final PendingWrites pendingWrites = new PendingWrites();
+        final List<UpdateContext> pooledContexts = new ArrayList<>();
+        // --- First call every UpdateRule, while the documents are still unchanged ---
+        try {
+            for (JsonNode document : documents) {
+                final UpdateContext updateContext = newUpdateContext(migrationPlan, document, true, pooledContexts);
+                callRules(updateContext, root, document, pendingWrites);
+            }
+            pendingWrites.callBatchRules();
+        } finally {
+            releaseUpdateContexts(pooledContexts);
+        }
+        // --- Then make all the changes ---
+        for (JsonNode document : documents) {
+            applyChanges(root, document);
+        }
+        pendingWrites.write();
+        return documents;
+    }
+
+    /**
+     * Migrates a JSON document in the plan's source format, building the target document
+     * from scratch instead of modifying a copy of the source. Every object whose shape is
+     * known from the target schema gets its fields in the order the target schema lists
+     * them, with new fields in their proper place rather than at the end, so documents
+     * migrated this way always have the same field order however the source was
+     * written. (That is the schema generator's order, which is not necessarily the order
+     * {@link SerializationUtil#serialize} writes fields in.) Each object's map is
+     * created big enough for all its fields so it never needs to grow. Any fields the
+     * target schema doesn't know about come last. The source document is not modified,
+     * and the result is equal to what {@link #migrate(MigrationPlan, JsonNode)} returns.
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceDocument source JSON document
+     * @return the transformed target document
+     */
+    public JsonNode migrateInTargetOrder(final MigrationPlan migrationPlan, final JsonNode sourceDocument) {
+        return migrateAllInTargetOrder(migrationPlan, List.of(sourceDocument)).getFirst();
+    }
+
+    /**
+     * Migrates several documents which all use the same MigrationPlan, building each one
+     * as {@link #migrateInTargetOrder(MigrationPlan, JsonNode)} does, and calling each
+     * {@link BatchUpdateRule} just once for all of the documents together.
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceDocuments source JSON documents
+     * @return the transformed target documents, in the same order
+     */
+    public List<JsonNode> migrateAllInTargetOrder(
+            final MigrationPlan migrationPlan,
+            final List<JsonNode> sourceDocuments
     ) {
-        assert !delta.requiresCustomization() || updateRule.isPresent();
-        final List<String> segments = Arrays.asList(delta.getFieldName().split("\\[]"));
-        applyAcrossArrays(updateContext, delta, updateRule, destinationDocument, segments);
+        final PathTrie.Node root = migrationPlan.getPathTrie().getRoot();
+        final PendingWrites pendingWrites = new PendingWrites();
+        final List<UpdateContext> pooledContexts = new ArrayList<>();
+        // --- The rules read the source documents, which are never changed ---
+        try {
+            for (JsonNode sourceDocument : sourceDocuments) {
+                final UpdateContext updateContext =
+                        newUpdateContext(migrationPlan, sourceDocument, false, pooledContexts);
+                callRules(updateContext, root, sourceDocument, pendingWrites);
+            }
+            pendingWrites.callBatchRules();
+        } finally {
+            releaseUpdateContexts(pooledContexts);
+        }
+        final Map<ObjectNode, Map<String, JsonNode>> ruleValues = pendingWrites.byParent();
+        final Properties targetProperties = migrationPlan.getTargetSchema().getProperties();
+        final List<JsonNode> targetDocuments = new ArrayList<>(sourceDocuments.size());
+        for (JsonNode sourceDocument : sourceDocuments) {
+            targetDocuments.add(buildValue(sourceDocument, root, targetProperties, null, ruleValues));
+        }
+        return targetDocuments;
+    }
+
+    /**
+     * Returns the UpdateContext for one document of a batch: a new one, or, if this
+     * Migrator reuses contexts, one from the pool, which is also added to pooledContexts
+     * so it can be given back when the batch's rules have all been called.
+     */
+    private UpdateContext newUpdateContext(
+            final MigrationPlan migrationPlan,
+            final JsonNode sourceDocument,
+            final boolean inPlace,
+            final List<UpdateContext> pooledContexts
+    ) {
+        if (updateContextPool == null) {
+            return migrationPlan.newUpdateContext(sourceDocument, inPlace);
+        }
+        final UpdateContext updateContext = updateContextPool.take(migrationPlan, sourceDocument, inPlace);
+        pooledContexts.add(updateContext);
+        return updateContext;
+    }
+
+    /** Gives the contexts taken by {@link #newUpdateContext} for a batch back to the pool. */
+    private void releaseUpdateContexts(final List<UpdateContext> pooledContexts) {
+        if (updateContextPool != null) {
+            updateContextPool.release(pooledContexts);
+        }
     }
 
     /**
-     * Recursively processes segments of a fieldName that has been split on "[]".
-     * If only one segment remains, this is the leaf case and we apply the actual change
-     * via {@link #applyLeafChange}. Otherwise, the first segment is a path to an array
-     * node; we navigate to it, then loop over each element and recurse with the
-     * remaining segments.
+     * Applies all the steps at or beneath one node of a plan's PathTrie to part of a
+     * document (which gets modified).
      *
      * @param updateContext an UpdateContext which can be used to call UpdateRule.mapField()
-     * @param delta the particular Delta to be processed
-     * @param updateRule either an UpdateRule that applies or Empty
-     * @param currentNode the node to navigate from
-     * @param remainingSegments the segments still to be processed
+     * @param node the node of the PathTrie for this part of the document
+     * @param subtree the part of the document found at that node. THIS GETS MODIFIED.
      */
-    private void applyAcrossArrays(
+    void applySubtree(final UpdateContext updateContext, final PathTrie.Node node, final JsonNode subtree) {
+        final PendingWrites pendingWrites = new PendingWrites();
+        callRules(updateContext, node, subtree, pendingWrites);
+        pendingWrites.callBatchRules();
+        applyChanges(node, subtree);
+        pendingWrites.write();
+    }
+
+    /** Walks the document calling every UpdateRule, and saves what they return. */
+    private void callRules(
             final UpdateContext updateContext,
-            final Delta delta,
-            final Optional<UpdateRule> updateRule,
+            final PathTrie.Node node,
+            final JsonNode document,
+            final PendingWrites pendingWrites
+    ) {
+        applyNode(updateContext, node, document, Pass.RULE_STEPS_ONLY, pendingWrites);
+    }
+
+    /** Walks the document applying every step that isn't an UpdateRule. */
+    private void applyChanges(final PathTrie.Node node, final JsonNode document) {
+        applyNode(null, node, document, Pass.ALL_BUT_RULE_STEPS, null);
+    }
+
+    /** A value an UpdateRule has produced which has not yet been put into the document. */
+    private record PendingWrite(ObjectNode parentNode, String fieldInParent, @Nullable JsonNode newNode) {}
+
+    /** The occurrences of one field that a BatchUpdateRule will populate with a single call. */
+    private record Batch(List<UpdateContext> updateContexts, List<ObjectNode> parentNodes, List<String> fieldsInParent) {}
+
+    /**
+     * The values UpdateRules have produced, plus the occurrences of fields waiting for a
+     * BatchUpdateRule to be called.
+     */
+    private static final class PendingWrites {
+        private final List<PendingWrite> writes = new ArrayList<>();
+        private final Map<MigrationStep, Batch> batches = new LinkedHashMap<>();
+
+        /**
+         * Adds a value from an UpdateRule. It is copied, since a rule may return a node from
+         * the source document (or one it hands out every time).
+         */
+        void add(final ObjectNode parentNode, final String fieldInParent, @Nullable final JsonNode newNode) {
+            writes.add(new PendingWrite(parentNode, fieldInParent, newNode == null ? null : newNode.deepCopy()));
+        }
+
+        /** Adds everything from another PendingWrites after what is already here. */
+        void addAll(final PendingWrites other) {
+            writes.addAll(other.writes);
+            for (Map.Entry<MigrationStep, Batch> entry : other.batches.entrySet()) {
+                final Batch otherBatch = entry.getValue();
+                final Batch batch = batches.putIfAbsent(entry.getKey(), otherBatch);
+                if (batch != null) {
+                    batch.updateContexts().addAll(otherBatch.updateContexts());
+                    batch.parentNodes().addAll(otherBatch.parentNodes());
+                    batch.fieldsInParent().addAll(otherBatch.fieldsInParent());
+                }
+            }
+        }
+
+        void addToBatch(
+                final MigrationStep step,
+                final UpdateContext updateContext,
+                final ObjectNode parentNode,
+                final String fieldInParent
+        ) {
+            final Batch batch = batches.computeIfAbsent(
+                    step, x -> new Batch(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+            batch.updateContexts().add(updateContext);
+            batch.parentNodes().add(parentNode);
+            batch.fieldsInParent().add(fieldInParent);
+        }
+
+        /** Calls each BatchUpdateRule once for all the occurrences of its field. */
+        void callBatchRules() {
+            for (Map.Entry<MigrationStep, Batch> entry : batches.entrySet()) {
+                final MigrationStep step = entry.getKey();
+                final Batch batch = entry.getValue();
+                final BatchUpdateRule batchUpdateRule = (BatchUpdateRule) step.getUpdateRule();
+                assert batchUpdateRule != null;
+                final List<JsonNode> newNodes = batchUpdateRule.mapFields(
+                        Collections.unmodifiableList(batch.updateContexts()),
+                        Collections.unmodifiableList(batch.parentNodes()),
+                        step.getFieldName());
+                if (newNodes.size() != batch.parentNodes().size()) {
+                    throw new RuntimeException(
+                            "The BatchUpdateRule for '" + step.getFieldName() + "' returned " + newNodes.size()
+                                    + " values for " + batch.parentNodes().size() + " fields.");
+                }
+                for (int i = 0; i < newNodes.size(); i++) {
+                    add(batch.parentNodes().get(i), batch.fieldsInParent().get(i), newNodes.get(i));
+                }
+            }
+        }
+
+        /**
+         * Returns the values, grouped by the object they belong in (compared by
+         * identity), without putting them into the documents.
+         */
+        Map<ObjectNode, Map<String, JsonNode>> byParent() {
+            final Map<ObjectNode, Map<String, JsonNode>> result = new IdentityHashMap<>();
+            for (PendingWrite pendingWrite : writes) {
+                result.computeIfAbsent(pendingWrite.parentNode(), x -> new HashMap<>())
+                        .put(pendingWrite.fieldInParent(), pendingWrite.newNode());
+            }
+            return result;
+        }
+
+        /** Puts all the values into the documents. */
+        void write() {
+            for (PendingWrite pendingWrite : writes) {
+                pendingWrite.parentNode().set(pendingWrite.fieldInParent(), pendingWrite.newNode());
+            }
+        }
+    }
+
+    /** Which of the steps to apply during one walk of the document. */
+    private enum Pass {
+        RULE_STEPS_ONLY, ALL_BUT_RULE_STEPS;
+
+        boolean includes(final MigrationStep step) {
+            return (step.getAction() == MigrationStep.Action.APPLY_RULE) == (this == RULE_STEPS_ONLY);
+        }
+    }
+
+    /**
+     * Applies all the steps at or beneath one node of the plan's PathTrie to the
+     * corresponding position in the document. This walks the document depth-first,
+     * visiting each object and each array that has changes beneath it exactly once,
+     * no matter how many steps apply there. The steps for fields of an object are
+     * applied before descending into its fields.
+     *
+     * @param updateContext an UpdateContext which can be used to call UpdateRule.mapField();
+     *                      only needed when calling rules
+     * @param node the node of the PathTrie for this position in the document
+     * @param currentNode the value found at this position in the document
+     * @param pass which of the steps to apply
+     * @param pendingWrites where values from UpdateRules are saved; only needed when
+     *                      calling rules
+     */
+    private void applyNode(
+            @Nullable final UpdateContext updateContext,
+            final PathTrie.Node node,
             final JsonNode currentNode,
-            final List<String> remainingSegments
+            final Pass pass,
+            @Nullable final PendingWrites pendingWrites
     ) {
-        if (remainingSegments.size() == 1) {
-            applyLeafChange(updateContext, delta, updateRule, currentNode, remainingSegments.getFirst());
-        } else {
-            final String pathToArray = remainingSegments.getFirst();
-            final JsonNode arrayNode = Lookup.getField(pathToArray, currentNode)
-                    .orElseThrow(() -> new RuntimeException(
-                            "Cannot navigate to array at '" + pathToArray + "' in the document."
-                    ));
-            if (!arrayNode.isArray()) {
+        if (pass == Pass.RULE_STEPS_ONLY && !node.containsRuleSteps()) {
+            return;
+        }
+        final String[] leafFieldNames = node.getLeafFieldNames();
+        final MigrationStep[] leafSteps = node.getLeafStepArray();
+        final String[] childFieldNames = node.getChildFieldNames();
+        final PathTrie.Node[] children = node.getChildArray();
+        if (leafSteps.length > 0 || children.length > 0) {
+            if (!(currentNode instanceof ObjectNode objectNode)) {
+                throw new RuntimeException(
+                        "Expected an object at '" + node.getPath() + "' but found " + currentNode.getNodeType()
+                );
+            }
+            for (int i = 0; i < leafSteps.length; i++) {
+                if (pass.includes(leafSteps[i])) {
+                    applyLeafChange(updateContext, leafSteps[i], objectNode, leafFieldNames[i], pendingWrites);
+                }
+            }
+            for (int i = 0; i < children.length; i++) {
+                final JsonNode childValue = objectNode.get(childFieldNames[i]);
+                if (childValue == null) {
+                    throw new RuntimeException(
+                            "Cannot navigate to field '" + children[i].getPath() + "' in the document."
+                    );
+                }
+                applyNode(updateContext, children[i], childValue, pass, pendingWrites);
+            }
+        }
+        final PathTrie.Node elementsNode = node.getElements();
+        if (elementsNode != null) {
+            if (!currentNode.isArray()) {
                 throw new RuntimeException(
-                        "Expected an array at '" + pathToArray + "' but found " + arrayNode.getNodeType()
+                        "Expected an array at '" + node.getPath() + "' but found " + currentNode.getNodeType()
                 );
             }
-            final List<String> rest = remainingSegments.subList(1, remainingSegments.size());
-            for (JsonNode element : arrayNode) {
-                applyAcrossArrays(updateContext, delta, updateRule, element, rest);
+            final int size = currentNode.size();
+            if (size >= parallelArrayThreshold) {
+                final ElementsTask task = new ElementsTask(
+                        updateContext, elementsNode, currentNode, pass, 0, size, pendingWrites != null);
+                if (ForkJoinTask.inForkJoinPool()) {
+                    task.invoke();
+                } else {
+                    ForkJoinPool.commonPool().invoke(task);
+                }
+                if (pendingWrites != null) {
+                    assert task.pendingWrites != null;
+                    pendingWrites.addAll(task.pendingWrites);
+                }
+            } else {
+                applyElements(updateContext, elementsNode, currentNode, pass, 0, size, pendingWrites);
             }
         }
     }
 
     /**
-     * Applies a single delta at a leaf location in the JSON tree. The relativePath
-     * is a "/"-separated path (no "[]") relative to baseNode.
+     * Applies the steps beneath an array to the elements from start (inclusive) to end
+     * (exclusive). Every step is applied to one element before moving on to the next,
+     * while that element is still in cache; indexing avoids creating an Iterator.
+     */
+    private void applyElements(
+            @Nullable final UpdateContext updateContext,
+            final PathTrie.Node elementsNode,
+            final JsonNode arrayNode,
+            final Pass pass,
+            final int start,
+            final int end,
+            @Nullable final PendingWrites pendingWrites
+    ) {
+        for (int i = start; i < end; i++) {
+            applyNode(updateContext, elementsNode, arrayNode.get(i), pass, pendingWrites);
+        }
+    }
+
+    /**
+     * Applies the steps beneath an array to a range of its elements, splitting the range
+     * in half until the pieces are small enough. Each piece collects its own pending
+     * writes, which are then combined in order, so the results are the same as doing
+     * the elements one after another.
+     */
+    private class ElementsTask extends RecursiveAction {
+        @Nullable
+        private final UpdateContext updateContext;
+        private final PathTrie.Node elementsNode;
+        private final JsonNode arrayNode;
+        private final Pass pass;
+        private final int start;
+        private final int end;
+        @Nullable
+        final PendingWrites pendingWrites;
+
+        ElementsTask(
+                @Nullable final UpdateContext updateContext,
+                final PathTrie.Node elementsNode,
+                final JsonNode arrayNode,
+                final Pass pass,
+                final int start,
+                final int end,
+                final boolean collectWrites
+        ) {
+            this.updateContext = updateContext;
+            this.elementsNode = elementsNode;
+            this.arrayNode = arrayNode;
+            this.pass = pass;
+            this.start = start;
+            this.end = end;
+            this.pendingWrites = collectWrites ? new PendingWrites() : null;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= PARALLEL_PIECE_SIZE) {
+                applyElements(updateContext, elementsNode, arrayNode, pass, start, end, pendingWrites);
+            } else {
+                final int middle = (start + end) >>> 1;
+                final boolean collectWrites = pendingWrites != null;
+                final ElementsTask first = new ElementsTask(
+                        updateContext, elementsNode, arrayNode, pass, start, middle, collectWrites);
+                final ElementsTask second = new ElementsTask(
+                        updateContext, elementsNode, arrayNode, pass, middle, end, collectWrites);
+                invokeAll(first, second);
+                if (pendingWrites != null) {
+                    assert first.pendingWrites != null && second.pendingWrites != null;
+                    pendingWrites.addAll(first.pendingWrites);
+                    pendingWrites.addAll(second.pendingWrites);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a single step to a field of an object.
      *
-     * @param updateContext an UpdateContext which can be used to call UpdateRule.mapField()
-     * @param delta the particular Delta to be processed
-     * @param updateRule either an UpdateRule that applies or Empty; and it will never be
-     *                   empty if the Delta requires customization.
-     * @param baseNode the node to navigate from using relativePath
-     * @param relativePath a "/"-separated path to the field to modify
+     * @param updateContext an UpdateContext which can be used to call UpdateRule.mapField();
+     *                      only needed when calling rules
+     * @param step the particular MigrationStep to be processed
+     * @param parentNode the object containing the field to modify
+     * @param fieldInParent the name of the field to modify
+     * @param pendingWrites where values from UpdateRules are saved; only needed when
+     *                      calling rules
      */
     private void applyLeafChange(
-            final UpdateContext updateContext,
-            final Delta delta,
-            final Optional<UpdateRule> updateRule,
-            final JsonNode baseNode,
-            final String relativePath
+            @Nullable final UpdateContext updateContext,
+            final MigrationStep step,
+            final ObjectNode parentNode,
+            final String fieldInParent,
+            @Nullable final PendingWrites pendingWrites
     ) {
-        // --- Navigate to the proper location in the Json ---
-        final Lookup.ParentAndField parentAndField = Lookup.getParentAndField(
-                relativePath, baseNode
-        ).orElseThrow(() -> new RuntimeException(
-                "Cannot navigate to field '" + relativePath + "' in the document."
-        ));
-        final ObjectNode parentNode = parentAndField.parentNode();
-        final Optional<JsonNode> existingNode = parentAndField.targetNode();
-        final String fieldInParent = parentAndField.fieldInParent();
-
-        assert existingNode.equals(Optional.ofNullable(parentNode.get(fieldInParent)));
-
-        // --- Apply the change ---
-        switch (delta) {
-            case Drop drop -> {
+        switch (step.getAction()) {
+            case DROP -> {
                 // Remove the existing node (always)
                 parentNode.remove(fieldInParent);
             }
-            case DefaultingAdd defaultingAdd -> {
-                final JsonNode newNode;
-                if (updateRule.isPresent()) {
-                    newNode = updateRule.get().mapField(updateContext, delta.getFieldName());
+            case SET_DEFAULT -> {
+                // every document gets its own copy of the default
+                parentNode.set(fieldInParent, defaultValueOf(step));
+            }
+            case APPLY_RULE -> {
+                assert updateContext != null && pendingWrites != null;
+                if (step.getUpdateRule() instanceof BatchUpdateRule) {
+                    pendingWrites.addToBatch(step, updateContext, parentNode, fieldInParent);
                 } else {
-                    newNode = defaultingAdd.getDefaultValue();
+                    assert step.getUpdateRule() != null;
+                    final JsonNode newNode = step.getUpdateRule().mapField(updateContext, step.getFieldName());
+                    pendingWrites.add(parentNode, fieldInParent, newNode);
                 }
-                parentNode.set(fieldInParent, newNode);
             }
-            case CustomAdd customAdd -> {
-                assert updateRule.isPresent();
-                final JsonNode newNode = updateRule.get().mapField(updateContext, delta.getFieldName());
-                parentNode.set(fieldInParent, newNode);
+        }
+    }
+
+    /**
+     * Builds the target value for a source value, for {@link #migrateAllInTargetOrder}.
+     * Objects are built field by field in the order of the target schema's properties,
+     * applying the steps found at this node of the PathTrie; arrays are built element by
+     * element; anything else (including objects the target schema says nothing about,
+     * with no steps inside them) is copied.
+     *
+     * @param sourceValue the value in the source document
+     * @param node the node of the PathTrie for this position, or null if nothing here changes
+     * @param objectProperties the target schema's properties for an object at this
+     *                         position, or null if unknown
+     * @param itemsSchema the target schema for the elements of an array at this
+     *                    position, or null if unknown
+     * @param ruleValues the values the UpdateRules produced, by the source object they belong in
+     */
+    private JsonNode buildValue(
+            final JsonNode sourceValue,
+            @Nullable final PathTrie.Node node,
+            @Nullable final Properties objectProperties,
+            @Nullable final Subschema itemsSchema,
+            final Map<ObjectNode, Map<String, JsonNode>> ruleValues
+    ) {
+        if (sourceValue instanceof ObjectNode sourceObject && (node != null || objectProperties != null)) {
+            return buildObject(sourceObject, node, objectProperties, ruleValues);
+        }
+        final PathTrie.Node elementsNode = node == null ? null : node.getElements();
+        if (sourceValue instanceof ArrayNode sourceArray && (elementsNode != null || itemsSchema != null)) {
+            final Properties elementProperties = propertiesOf(itemsSchema);
+            final Subschema elementItemsSchema = itemsOf(itemsSchema);
+            final int size = sourceArray.size();
+            final List<JsonNode> elements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                elements.add(buildValue(
+                        sourceArray.get(i), elementsNode, elementProperties, elementItemsSchema, ruleValues));
             }
-            case Change change -> {
-                assert updateRule.isPresent();
-                final JsonNode newNode = updateRule.get().mapField(updateContext, delta.getFieldName());
-                parentNode.set(fieldInParent, newNode);
+            return new ArrayNode(nodeFactory(), elements);
+        }
+        if (node != null && (node.getLeafStepArray().length > 0 || node.getChildArray().length > 0)) {
+            throw new RuntimeException(
+                    "Expected an object at '" + node.getPath() + "' but found " + sourceValue.getNodeType());
+        }
+        if (elementsNode != null) {
+            throw new RuntimeException(
+                    "Expected an array at '" + node.getPath() + "' but found " + sourceValue.getNodeType());
+        }
+        return sourceValue.deepCopy();
+    }
+
+    /** Builds the target object for a source object; see {@link #buildValue}. */
+    private ObjectNode buildObject(
+            final ObjectNode sourceObject,
+            @Nullable final PathTrie.Node node,
+            @Nullable final Properties objectProperties,
+            final Map<ObjectNode, Map<String, JsonNode>> ruleValues
+    ) {
+        final Map<String, Subschema> targetProperties = objectProperties == null
+                ? Map.of()
+                : objectProperties.getProperties();
+        final Map<String, JsonNode> fields = LinkedHashMap.newLinkedHashMap(
+                Math.max(targetProperties.size(), sourceObject.size()));
+        final Map<String, JsonNode> objectRuleValues = ruleValues.getOrDefault(sourceObject, Map.of());
+        // --- First the fields the target schema knows about, in its order ---
+        for (Map.Entry<String, Subschema> entry : targetProperties.entrySet()) {
+            final String fieldName = entry.getKey();
+            final MigrationStep step = node == null ? null : node.getLeafStep(fieldName);
+            if (step != null) {
+                putStepValue(fields, step, fieldName, objectRuleValues);
+            } else {
+                final JsonNode sourceField = sourceObject.get(fieldName);
+                final PathTrie.Node child = node == null ? null : node.getChild(fieldName);
+                if (sourceField != null) {
+                    fields.put(fieldName, buildValue(
+                            sourceField, child, propertiesOf(entry.getValue()), itemsOf(entry.getValue()), ruleValues));
+                }
             }
         }
+        // --- Then any other fields of the source that aren't being dropped ---
+        for (Map.Entry<String, JsonNode> entry : sourceObject.properties()) {
+            final String fieldName = entry.getKey();
+            if (!targetProperties.containsKey(fieldName)) {
+                final MigrationStep step = node == null ? null : node.getLeafStep(fieldName);
+                final PathTrie.Node child = node == null ? null : node.getChild(fieldName);
+                if (step == null) {
+                    fields.put(fieldName, buildValue(entry.getValue(), child, null, null, ruleValues));
+                }
+            }
+        }
+        // --- And last any steps for fields the target schema didn't list ---
+        if (node != null) {
+            final String[] leafFieldNames = node.getLeafFieldNames();
+            final MigrationStep[] leafSteps = node.getLeafStepArray();
+            for (int i = 0; i < leafSteps.length; i++) {
+                if (!targetProperties.containsKey(leafFieldNames[i])) {
+                    putStepValue(fields, leafSteps[i], leafFieldNames[i], objectRuleValues);
+                }
+            }
+            final String[] childFieldNames = node.getChildFieldNames();
+            final PathTrie.Node[] children = node.getChildArray();
+            for (int i = 0; i < children.length; i++) {
+                if (!sourceObject.has(childFieldNames[i])) {
+                    throw new RuntimeException(
+                            "Cannot navigate to field '" + children[i].getPath() + "' in the document.");
+                }
+            }
+        }
+        return new ObjectNode(nodeFactory(), fields);
+    }
+
+    /** Returns a copy of a SET_DEFAULT step's default value, so no two documents share it. */
+    static JsonNode defaultValueOf(final MigrationStep step) {
+        final JsonNode defaultValue = step.getDefaultValue();
+        assert defaultValue != null;
+        return defaultValue.deepCopy();
+    }
+
+    /** Puts the value a leaf step gives a field (if any) into the fields of an object being built. */
+    private static void putStepValue(
+            final Map<String, JsonNode> fields,
+            final MigrationStep step,
+            final String fieldName,
+            final Map<String, JsonNode> objectRuleValues
+    ) {
+        switch (step.getAction()) {
+            case DROP -> {
+                // the field is left out
+            }
+            case SET_DEFAULT -> fields.put(fieldName, defaultValueOf(step));
+            case APPLY_RULE -> {
+                final JsonNode ruleValue = objectRuleValues.get(fieldName);
+                fields.put(fieldName, ruleValue == null ? nodeFactory().nullNode() : ruleValue);
+            }
+        }
+    }
+
+    /** Returns the properties of an object described by a subschema, or null if unknown. */
+    @Nullable
+    private static Properties propertiesOf(@Nullable final Subschema subschema) {
+        return subschema instanceof NormalSubschema normalSubschema ? normalSubschema.getProperties() : null;
+    }
+
+    /** Returns the subschema for the elements of an array described by a subschema, or null if unknown. */
+    @Nullable
+    private static Subschema itemsOf(@Nullable final Subschema subschema) {
+        return subschema instanceof NormalSubschema normalSubschema ? normalSubschema.getItemsType() : null;
+    }
+
+    private static JsonNodeFactory nodeFactory() {
+        return SerializationUtil.getObjectMapper().getNodeFactory();
     }
 }
@@ -0,0 +1,602 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mcherm.versionedserialization.schemadiff.schema.NormalSubschema;
+import com.mcherm.versionedserialization.schemadiff.schema.Properties;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import com.mcherm.versionedserialization.schemadiff.schema.Subschema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An annotation processor which, for each class marked with {@link MigratesFrom}, generates
+ * a plain Java class that migrates JSON written for each older class to the format of the
+ * marked class, reading it with a JsonParser and writing it with a JsonGenerator the way
+ * a {@link StreamingMigrator} does. The generated class depends only on jackson-core, so
+ * at run time there is no schema generation, no schema parsing and no diffing; all of
+ * that is done here, when the classes are compiled.
+ *
+ * <p>The classes aren't loaded while they are being compiled, so their schemas can't be
+ * generated the usual way. Instead a SchemaInfo is built from the fields of each class
+ * (including inherited ones, leaving out static, transient and {@code @JsonIgnore}d
+ * fields, and using the name from {@code @JsonProperty} where there is one), and the
+ * usual MigrationPlan is worked out from those. That only matches what Jackson does for
+ * plain classes and records like the ones in the objects package, so the processor
+ * reports an error for any class it can't model exactly: one with a field Jackson
+ * wouldn't write (not public and with no public getter), a getter with no field behind
+ * it, a Jackson annotation other than {@code @JsonIgnore} or a plain
+ * {@code @JsonProperty("name")}, or a field whose type is abstract, an interface or a
+ * Map. Only migrations which need no UpdateRules can be generated either. For any of
+ * those, a MigrationPlan should be used at run time instead. Each generated class has a
+ * PLAN_STEPS constant listing the steps it was generated from, which a test can compare
+ * with the steps of the MigrationPlan worked out at run time.
+ *
+ * <p>The processor is not registered as a service in the main jar, so it only runs when
+ * asked for: with javac's {@code -processor} option, or by putting the jar with the
+ * {@code processor} classifier (which does register it) on the annotation processor path.
+ */
+@SupportedAnnotationTypes("com.mcherm.versionedserialization.migration.MigratesFrom")
+public class MigratorProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(MigratesFrom.class)) {
+            if (!(element instanceof TypeElement targetType)) {
+                continue;
+            }
+            for (TypeElement sourceType : sourceTypesOf(targetType)) {
+                try {
+                    generate(sourceType, targetType);
+                } catch (UnsupportedShape err) {
+                    processingEnv.getMessager().printMessage(
+                            Diagnostic.Kind.ERROR,
+                            "Cannot generate a migrator from " + sourceType.getQualifiedName() + " to "
+                                    + targetType.getQualifiedName() + ": " + err.getMessage(),
+                            err.element);
+                } catch (IOException | RuntimeException err) {
+                    processingEnv.getMessager().printMessage(
+                            Diagnostic.Kind.ERROR,
+                            "Cannot generate a migrator from " + sourceType.getQualifiedName() + ": " + err.getMessage(),
+                            targetType);
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns the classes listed in a type's MigratesFrom annotation. */
+    private List<TypeElement> sourceTypesOf(final TypeElement targetType) {
+        final List<TypeElement> result = new ArrayList<>();
+        for (AnnotationMirror annotation : targetType.getAnnotationMirrors()) {
+            final Element annotationElement = annotation.getAnnotationType().asElement();
+            if (((TypeElement) annotationElement).getQualifiedName().contentEquals(MigratesFrom.class.getName())) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        @SuppressWarnings("unchecked")
+                        final List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry.getValue().getValue();
+                        for (AnnotationValue value : values) {
+                            result.add((TypeElement) ((DeclaredType) value.getValue()).asElement());
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Works out the plan for one pair of classes and writes the migrator class for it. */
+    private void generate(final TypeElement sourceType, final TypeElement targetType) throws IOException {
+        final MigrationPlan migrationPlan = new MigrationPlan(
+                schemaOf(sourceType), schemaOf(targetType), new UpdateRules(Map.of()));
+        final String packageName = processingEnv.getElementUtils().getPackageOf(targetType).getQualifiedName().toString();
+        final String className = flatName(targetType) + "From" + flatName(sourceType) + "Migrator";
+        final String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, targetType).openWriter()) {
+            writer.write(new MigratorSource(packageName, className, sourceType, targetType, migrationPlan).build());
+        }
+    }
+
+    /** Returns the simple names of a type and any types it is nested in, joined by "_". */
+    private static String flatName(final TypeElement type) {
+        final Element enclosing = type.getEnclosingElement();
+        return enclosing instanceof TypeElement enclosingType
+                ? flatName(enclosingType) + "_" + type.getSimpleName()
+                : type.getSimpleName().toString();
+    }
+
+    // ======== Building a SchemaInfo from the fields of a class ========
+
+    /**
+     * Thrown when a class's serialized form can't be worked out exactly from its fields,
+     * so any migrator generated for it might be wrong.
+     */
+    private static final class UnsupportedShape extends RuntimeException {
+        private final Element element;
+
+        UnsupportedShape(final Element element, final String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private SchemaInfo schemaOf(final TypeElement type) {
+        return new SchemaInfo("", Map.of(), propertiesOf(type, new HashSet<>()));
+    }
+
+    /**
+     * Returns the Properties of a class, based on its fields.
+     *
+     * @param type the class
+     * @param inProgress the names of the classes whose properties are being worked out
+     *                   further up, so that a class that contains itself doesn't recurse
+     *                   forever. THIS GETS MODIFIED (and restored).
+     */
+    private Properties propertiesOf(final TypeElement type, final Set<String> inProgress) {
+        if (type.getKind() == ElementKind.INTERFACE || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedShape(type, type.getQualifiedName()
+                    + " is abstract, so what is written depends on the subclass of each value");
+        }
+        final List<VariableElement> fields = fieldsOf(type);
+        checkGetters(type, fields);
+        final Map<String, Subschema> properties = new TreeMap<>();
+        for (VariableElement field : fields) {
+            properties.put(propertyNameOf(field), subschemaOf(field.asType(), inProgress));
+        }
+        return new Properties(properties);
+    }
+
+    /**
+     * Returns the serialized fields of a class, including those of its superclasses.
+     * Every field must be one Jackson would both write and read: a record component, a
+     * public field, a field with {@code @JsonProperty}, or a field with a public getter.
+     */
+    private List<VariableElement> fieldsOf(final TypeElement type) {
+        checkAnnotations(type);
+        final List<VariableElement> result = new ArrayList<>();
+        if (type.getSuperclass() instanceof DeclaredType superclass
+                && !((TypeElement) superclass.asElement()).getQualifiedName().toString().startsWith("java.")) {
+            result.addAll(fieldsOf((TypeElement) superclass.asElement()));
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final Set<Modifier> modifiers = field.getModifiers();
+            final JsonIgnore jsonIgnore = field.getAnnotation(JsonIgnore.class);
+            if (!modifiers.contains(Modifier.STATIC)
+                    && !modifiers.contains(Modifier.TRANSIENT)
+                    && (jsonIgnore == null || !jsonIgnore.value())) {
+                checkAnnotations(field);
+                if (type.getKind() != ElementKind.RECORD
+                        && !modifiers.contains(Modifier.PUBLIC)
+                        && field.getAnnotation(JsonProperty.class) == null
+                        && findGetter(type, field.getSimpleName().toString()) == null) {
+                    throw new UnsupportedShape(field, "Field " + field.getSimpleName()
+                            + " is not public and has no public getter, so Jackson would not write it");
+                }
+                result.add(field);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the name of the property Jackson writes for a field. */
+    private static String propertyNameOf(final VariableElement field) {
+        final JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+        return jsonProperty != null && !jsonProperty.value().isEmpty()
+                ? jsonProperty.value()
+                : field.getSimpleName().toString();
+    }
+
+    /**
+     * Checks that every public getter of a class (or its superclasses) reads one of the
+     * fields, since Jackson would write a property for a getter with no field as well.
+     * A getter's annotations apply to the whole property, so one that ignores or renames
+     * a field's property isn't supported either.
+     */
+    private void checkGetters(final TypeElement type, final List<VariableElement> fields) {
+        final Map<String, String> propertyNames = new HashMap<>();
+        for (VariableElement field : fields) {
+            propertyNames.put(field.getSimpleName().toString(), propertyNameOf(field));
+        }
+        for (TypeElement current = type; current != null; current = superclassOf(current)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                final String fieldName = getterPropertyName(method);
+                if (fieldName == null) {
+                    continue;
+                }
+                final JsonIgnore jsonIgnore = method.getAnnotation(JsonIgnore.class);
+                if (jsonIgnore != null && jsonIgnore.value()) {
+                    if (propertyNames.containsKey(fieldName)) {
+                        throw new UnsupportedShape(method, "Getter " + method.getSimpleName()
+                                + "() has @JsonIgnore, so Jackson ignores field " + fieldName
+                                + " as well; put @JsonIgnore on the field instead");
+                    }
+                    continue;
+                }
+                checkAnnotations(method);
+                if (!propertyNames.containsKey(fieldName)) {
+                    throw new UnsupportedShape(method, "Getter " + method.getSimpleName()
+                            + "() has no field behind it, so its property can't be worked out");
+                }
+                final JsonProperty jsonProperty = method.getAnnotation(JsonProperty.class);
+                if (jsonProperty != null && !jsonProperty.value().isEmpty()
+                        && !jsonProperty.value().equals(propertyNames.get(fieldName))) {
+                    throw new UnsupportedShape(method, "Getter " + method.getSimpleName()
+                            + "() renames the property to \"" + jsonProperty.value()
+                            + "\"; put @JsonProperty on the field instead");
+                }
+            }
+        }
+    }
+
+    /** Returns the public getter for a field of a class (or its superclasses), or null. */
+    @Nullable
+    private ExecutableElement findGetter(final TypeElement type, final String fieldName) {
+        for (TypeElement current = type; current != null; current = superclassOf(current)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                if (fieldName.equals(getterPropertyName(method))) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns a class's superclass, or null if there is none outside of the JDK. */
+    @Nullable
+    private static TypeElement superclassOf(final TypeElement type) {
+        return type.getSuperclass() instanceof DeclaredType superclass
+                && !((TypeElement) superclass.asElement()).getQualifiedName().toString().startsWith("java.")
+                ? (TypeElement) superclass.asElement()
+                : null;
+    }
+
+    /**
+     * If a method is a public getter that Jackson would write a property for (getX(), or
+     * isX() returning boolean), returns the property's name; otherwise returns null.
+     */
+    @Nullable
+    private static String getterPropertyName(final ExecutableElement method) {
+        final Set<Modifier> modifiers = method.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                || !method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+            return null;
+        }
+        final String methodName = method.getSimpleName().toString();
+        final String rest;
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            rest = methodName.substring(3);
+        } else if (methodName.startsWith("is") && methodName.length() > 2
+                && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+            rest = methodName.substring(2);
+        } else {
+            return null;
+        }
+        if (!Character.isUpperCase(rest.charAt(0))) {
+            return null;
+        }
+        // Jackson lower-cases the leading capitals: getURL() is "url"
+        int upper = 0;
+        while (upper < rest.length() && Character.isUpperCase(rest.charAt(upper))) {
+            upper++;
+        }
+        return rest.substring(0, upper).toLowerCase() + rest.substring(upper);
+    }
+
+    /**
+     * Checks that an element has no Jackson annotations other than {@code @JsonIgnore} and
+     * a plain {@code @JsonProperty("name")}; the others (like {@code @JsonInclude},
+     * {@code @JsonIgnoreProperties} or {@code @JsonTypeInfo}) change what gets written in
+     * ways this doesn't model.
+     */
+    private void checkAnnotations(final Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            final String name = annotationType.getQualifiedName().toString();
+            if (!name.startsWith("com.fasterxml.jackson.")) {
+                continue;
+            }
+            final boolean supported = name.equals(JsonIgnore.class.getName())
+                    || (name.equals(JsonProperty.class.getName()) && annotation.getElementValues().keySet().stream()
+                            .allMatch(key -> key.getSimpleName().contentEquals("value")));
+            if (!supported) {
+                throw new UnsupportedShape(element, "@" + annotationType.getSimpleName() + " on " + element
+                        + " is not supported; use a MigrationPlan at run time instead");
+            }
+        }
+    }
+
+    /** Returns the subschema for a field of the given type; see {@link #propertiesOf}. */
+    private Subschema subschemaOf(final TypeMirror type, final Set<String> inProgress) {
+        Subschema itemsType = null;
+        Properties properties = null;
+        if (type instanceof ArrayType arrayType) {
+            itemsType = subschemaOf(arrayType.getComponentType(), inProgress);
+        } else if (type instanceof DeclaredType declaredType) {
+            final TypeElement element = (TypeElement) declaredType.asElement();
+            final String name = element.getQualifiedName().toString();
+            if (isAssignableTo(declaredType, "java.util.Map")) {
+                throw new UnsupportedShape(element, "Map values are not supported");
+            } else if (isAssignableTo(declaredType, "java.util.Collection")) {
+                itemsType = declaredType.getTypeArguments().size() == 1
+                        ? subschemaOf(declaredType.getTypeArguments().getFirst(), inProgress)
+                        : null;
+            } else if (!name.startsWith("java.") && !name.startsWith("javax.")
+                    && element.getKind() != ElementKind.ENUM
+                    && !inProgress.contains(name)) {
+                inProgress.add(name);
+                properties = propertiesOf(element, inProgress);
+                inProgress.remove(name);
+            }
+        }
+        return NormalSubschema.fromFields(false, null, properties, itemsType, null, javaTypeOf(type), null);
+    }
+
+    private boolean isAssignableTo(final DeclaredType type, final String className) {
+        final TypeElement other = processingEnv.getElementUtils().getTypeElement(className);
+        final javax.lang.model.util.Types typeUtils = processingEnv.getTypeUtils();
+        return typeUtils.isAssignable(typeUtils.erasure(type), typeUtils.erasure(other.asType()));
+    }
+
+    /** Returns a type's name, written the same way as the "x-javaType" of a generated schema. */
+    private String javaTypeOf(final TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return type.toString();
+        } else if (type instanceof ArrayType arrayType) {
+            return javaTypeOf(arrayType.getComponentType()) + "[]";
+        } else if (type instanceof DeclaredType declaredType) {
+            final StringBuilder result = new StringBuilder(
+                    processingEnv.getElementUtils().getBinaryName((TypeElement) declaredType.asElement()));
+            final List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+            if (!typeArguments.isEmpty()) {
+                result.append('<');
+                for (int i = 0; i < typeArguments.size(); i++) {
+                    if (i > 0) {
+                        result.append(',');
+                    }
+                    result.append(javaTypeOf(typeArguments.get(i)));
+                }
+                result.append('>');
+            }
+            return result.toString();
+        } else if (type.getKind() == TypeKind.TYPEVAR || type.getKind() == TypeKind.WILDCARD) {
+            return javaTypeOf(processingEnv.getTypeUtils().erasure(type));
+        }
+        return type.toString();
+    }
+
+    // ======== Writing the migrator class ========
+
+    /** Builds the source code of one generated migrator class. */
+    private static final class MigratorSource {
+        private final String packageName;
+        private final String className;
+        private final TypeElement sourceType;
+        private final TypeElement targetType;
+        private final MigrationPlan migrationPlan;
+        private final StringBuilder methods = new StringBuilder();
+        private int methodCount = 0;
+
+        MigratorSource(
+                final String packageName,
+                final String className,
+                final TypeElement sourceType,
+                final TypeElement targetType,
+                final MigrationPlan migrationPlan
+        ) {
+            this.packageName = packageName;
+            this.className = className;
+            this.sourceType = sourceType;
+            this.targetType = targetType;
+            this.migrationPlan = migrationPlan;
+        }
+
+        String build() {
+            final String rootMethod = addMethod(migrationPlan.getPathTrie().getRoot());
+            final StringBuilder out = new StringBuilder();
+            if (!packageName.isEmpty()) {
+                out.append("package ").append(packageName).append(";\n\n");
+            }
+            out.append("""
+                    import com.fasterxml.jackson.core.JsonFactory;
+                    import com.fasterxml.jackson.core.JsonGenerator;
+                    import com.fasterxml.jackson.core.JsonParser;
+                    import com.fasterxml.jackson.core.JsonToken;
+
+                    import java.io.IOException;
+                    import java.io.StringWriter;
+
+                    /**
+                     * Migrates JSON written for {@code %s} to the format of
+                     * {@code %s}. Generated by MigratorProcessor; do not edit.
+                     */
+                    @javax.annotation.processing.Generated("%s")
+                    public final class %s {
+                        /**
+                         * The steps of the plan this was generated from, as MigrationPlan.getSteps()
+                         * lists them, so a test can check that the plan worked out at run time agrees.
+                         */
+                        public static final String PLAN_STEPS = %s;
+
+                        private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+                        private %s() {}
+
+                        /**
+                         * Reads one JSON document in the old format from the parser and writes it in
+                         * the new format to the generator. The parser may be positioned before the
+                         * document or on its first token; when this returns, it is positioned on the
+                         * document's last token.
+                         */
+                        public static void migrate(final JsonParser parser, final JsonGenerator generator) throws IOException {
+                            if (!parser.hasCurrentToken() && parser.nextToken() == null) {
+                                throw new IOException("No JSON document to migrate.");
+                            }
+                            %s(parser, generator);
+                        }
+
+                        /** Migrates a JSON document in the old format, returning the JSON in the new format. */
+                        public static String migrate(final String sourceJson) {
+                            final StringWriter writer = new StringWriter(sourceJson.length());
+                            try (
+                                    final JsonParser parser = JSON_FACTORY.createParser(sourceJson);
+                                    final JsonGenerator generator = JSON_FACTORY.createGenerator(writer)
+                            ) {
+                                migrate(parser, generator);
+                            } catch (IOException e) {
+                                throw new RuntimeException("Failed to migrate JSON", e);
+                            }
+                            return writer.toString();
+                        }
+                    """.formatted(
+                            sourceType.getQualifiedName(),
+                            targetType.getQualifiedName(),
+                            MigratorProcessor.class.getName(),
+                            className,
+                            literal(migrationPlan.getSteps().toString()),
+                            className,
+                            rootMethod));
+            out.append(methods);
+            out.append("}\n");
+            return out.toString();
+        }
+
+        /**
+         * Adds a method that migrates the value at one node of the PathTrie (and the
+         * methods for the nodes beneath it), returning its name.
+         */
+        private String addMethod(final PathTrie.Node node) {
+            final String methodName = "migrateValue" + methodCount++;
+            final StringBuilder body = new StringBuilder();
+            final String[] leafFieldNames = node.getLeafFieldNames();
+            final MigrationStep[] leafSteps = node.getLeafStepArray();
+            final String[] childFieldNames = node.getChildFieldNames();
+            final PathTrie.Node[] children = node.getChildArray();
+            final PathTrie.Node elements = node.getElements();
+            if (leafSteps.length > 0 || children.length > 0) {
+                body.append("""
+                                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                                    generator.copyCurrentStructure(parser);
+                                    return;
+                                }
+                                generator.writeStartObject();
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    final String fieldName = parser.currentName();
+                                    parser.nextToken();
+                                    switch (fieldName) {
+                        """);
+                final List<String> skipped = new ArrayList<>();
+                for (String leafFieldName : leafFieldNames) {
+                    skipped.add(literal(leafFieldName)); // dropped, or replaced by a default below
+                }
+                if (!skipped.isEmpty()) {
+                    body.append("                case ").append(String.join(", ", skipped))
+                            .append(" -> parser.skipChildren();\n");
+                }
+                for (int i = 0; i < children.length; i++) {
+                    final String childMethod = addMethod(children[i]);
+                    body.append("                case ").append(literal(childFieldNames[i])).append(" -> {\n")
+                            .append("                    generator.writeFieldName(fieldName);\n")
+                            .append("                    ").append(childMethod).append("(parser, generator);\n")
+                            .append("                }\n");
+                }
+                body.append("""
+                                        default -> {
+                                            generator.writeFieldName(fieldName);
+                                            generator.copyCurrentStructure(parser);
+                                        }
+                                    }
+                                }
+                        """);
+                for (int i = 0; i < leafSteps.length; i++) {
+                    if (leafSteps[i].getAction() == MigrationStep.Action.SET_DEFAULT) {
+                        body.append("        generator.writeFieldName(").append(literal(leafFieldNames[i])).append(");\n")
+                                .append("        generator.writeRawValue(")
+                                .append(literal(String.valueOf(leafSteps[i].getDefaultValue()))).append(");\n");
+                    }
+                }
+                body.append("        generator.writeEndObject();\n");
+            } else if (elements != null) {
+                final String elementMethod = addMethod(elements);
+                body.append("""
+                                if (parser.currentToken() != JsonToken.START_ARRAY) {
+                                    generator.copyCurrentStructure(parser);
+                                    return;
+                                }
+                                generator.writeStartArray();
+                                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                    %s(parser, generator);
+                                }
+                                generator.writeEndArray();
+                        """.formatted(elementMethod));
+            } else {
+                body.append("        generator.copyCurrentStructure(parser);\n");
+            }
+            methods.append("\n")
+                    .append("    /** Migrates the value at ").append(describe(node)).append(". */\n")
+                    .append("    private static void ").append(methodName)
+                    .append("(final JsonParser parser, final JsonGenerator generator) throws IOException {\n")
+                    .append(body)
+                    .append("    }\n");
+            return methodName;
+        }
+
+        private static String describe(final PathTrie.Node node) {
+            return node.getPath().isEmpty() ? "the root of the document" : "\"" + node.getPath() + "\"";
+        }
+
+        /** Returns a Java string literal for a string. */
+        private static String literal(@Nullable final String value) {
+            final StringBuilder result = new StringBuilder("\"");
+            for (char c : String.valueOf(value).toCharArray()) {
+                switch (c) {
+                    case '"' -> result.append("\\\"");
+                    case '\\' -> result.append("\\\\");
+                    case '\n' -> result.append("\\n");
+                    case '\r' -> result.append("\\r");
+                    case '\t' -> result.append("\\t");
+                    default -> {
+                        if (c < 0x20 || c > 0x7e) {
+                            result.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            result.append(c);
+                        }
+                    }
+                }
+            }
+            return result.append('"').toString();
+        }
+    }
+}
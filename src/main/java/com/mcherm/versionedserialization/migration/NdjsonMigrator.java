@@ -0,0 +1,239 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.mcherm.versionedserialization.SerializationUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Migrates a file of newline-delimited JSON (one document per line), using every core.
+ * The file is memory-mapped rather than read into the heap, and split into chunks of
+ * roughly equal size. Each chunk is handled by one worker, which finds the lines that
+ * start within it, migrates each one with a {@link StreamingMigrator}, and collects the
+ * output for the chunk. The chunks' output is written in order, and only a limited
+ * number of chunks are processed ahead of the one being written, so memory use stays
+ * bounded however large the file is.
+ *
+ * <p>The output is written to a temporary file which is then renamed into place.
+ */
+public class NdjsonMigrator {
+
+    /**
+     * What happened when a file was migrated.
+     *
+     * @param recordsMigrated the number of documents migrated
+     * @param bytesRead the size of the source file
+     * @param bytesWritten the size of the file written
+     * @param elapsed how long the migration took
+     */
+    public record Report(long recordsMigrated, long bytesRead, long bytesWritten, Duration elapsed) {
+        /** Returns the number of documents migrated per second. */
+        public double recordsPerSecond() {
+            return recordsMigrated / (Math.max(elapsed.toNanos(), 1) / 1_000_000_000.0);
+        }
+    }
+
+    /** The output of one chunk. */
+    private record ChunkResult(byte[] output, long records) {}
+
+    /** The default size of the chunks a file is split into. */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final StreamingMigrator streamingMigrator;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public NdjsonMigrator(final int parallelism) {
+        this(new StreamingMigrator(), parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param streamingMigrator the StreamingMigrator to use for each document
+     * @param parallelism the number of threads to use
+     * @param chunkSize the approximate number of bytes of the file each worker takes on
+     *                  at a time
+     */
+    public NdjsonMigrator(final StreamingMigrator streamingMigrator, final int parallelism, final int chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.streamingMigrator = streamingMigrator;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Migrates every document in a newline-delimited JSON file, writing them, in the
+     * same order, to another file.
+     *
+     * @param migrationPlan the plan to follow for every document
+     * @param sourceFile the file to read
+     * @param targetFile the file to write; it is replaced if it exists
+     * @return a Report of what was done
+     */
+    public Report migrate(final MigrationPlan migrationPlan, final Path sourceFile, final Path targetFile) throws IOException {
+        final long startTime = System.nanoTime();
+        final Path targetParent = targetFile.toAbsolutePath().getParent();
+        final Path tempFile = Files.createTempFile(targetParent, targetFile.getFileName().toString(), ".tmp");
+        try {
+            final long fileSize;
+            final long records;
+            try (
+                    final FileChannel source = FileChannel.open(sourceFile, StandardOpenOption.READ);
+                    final OutputStream target = Files.newOutputStream(tempFile)
+            ) {
+                fileSize = source.size();
+                records = migrateChunks(migrationPlan, source, target);
+            }
+            final long bytesWritten = Files.size(tempFile);
+            Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new Report(records, fileSize, bytesWritten, Duration.ofNanos(System.nanoTime() - startTime));
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Hands the chunks of the file to a pool of workers and writes out their results in
+     * order. Returns the number of documents migrated.
+     */
+    private long migrateChunks(
+            final MigrationPlan migrationPlan,
+            final FileChannel source,
+            final OutputStream target
+    ) throws IOException {
+        final long fileSize = source.size();
+        final long chunkCount = (fileSize + chunkSize - 1) / chunkSize;
+        final int maxChunksAhead = parallelism * 2;
+        final Deque<Future<ChunkResult>> pending = new ArrayDeque<>(maxChunksAhead);
+        long records = 0;
+        final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (long chunk = 0; chunk < chunkCount; chunk++) {
+                if (pending.size() >= maxChunksAhead) {
+                    records += writeResult(pending.removeFirst(), target);
+                }
+                final long nominalStart = chunk * chunkSize;
+                pending.addLast(workers.submit(() -> migrateChunk(migrationPlan, source, nominalStart)));
+            }
+            while (!pending.isEmpty()) {
+                records += writeResult(pending.removeFirst(), target);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+            workers.shutdownNow();
+        }
+        return records;
+    }
+
+    /** Waits for a chunk to finish, then writes its output. Returns its number of records. */
+    private static long writeResult(final Future<ChunkResult> future, final OutputStream target) throws IOException {
+        final ChunkResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while migrating");
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException("Failed to migrate", err.getCause());
+        }
+        target.write(result.output());
+        return result.records();
+    }
+
+    /**
+     * Migrates the lines that start in the chunk beginning at nominalStart. (A line
+     * starts at the beginning of the file or just after a newline.) The file is mapped
+     * from just before nominalStart for as far as a single mapping can reach, which costs
+     * nothing until the pages are touched.
+     */
+    private ChunkResult migrateChunk(
+            final MigrationPlan migrationPlan,
+            final FileChannel source,
+            final long nominalStart
+    ) throws IOException {
+        final long fileSize = source.size();
+        final long mapStart = Math.max(0, nominalStart - 1);
+        final long mapLength = Math.min(fileSize - mapStart, Integer.MAX_VALUE);
+        final MappedByteBuffer mapped = source.map(FileChannel.MapMode.READ_ONLY, mapStart, mapLength);
+        final int nominalEnd = (int) Math.min(nominalStart + chunkSize - mapStart, mapLength);
+        final int start = nominalStart == 0 ? 0 : lineStartAtOrAfter(mapped, 1, mapStart, fileSize);
+        final int end = lineStartAtOrAfter(mapped, nominalEnd, mapStart, fileSize);
+        if (start >= end) {
+            return new ChunkResult(new byte[0], 0);
+        }
+
+        final ObjectMapper objectMapper = SerializationUtil.getObjectMapper();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(end - start + 64);
+        long records = 0;
+        try (
+                final JsonParser parser = objectMapper.createParser(
+                        new ByteBufferBackedInputStream(mapped.slice(start, end - start)));
+                final JsonGenerator generator = objectMapper.createGenerator(output)
+        ) {
+            generator.setRootValueSeparator(null);
+            while (parser.nextToken() != null) {
+                streamingMigrator.migrate(migrationPlan, parser, generator);
+                generator.writeRaw('\n');
+                records++;
+            }
+        } catch (IOException | RuntimeException err) {
+            throw new IOException("Failed to migrate the line(s) starting at byte " + (mapStart + start), err);
+        }
+        return new ChunkResult(output.toByteArray(), records);
+    }
+
+    /**
+     * Returns the position (within the mapped buffer) of the first line that starts at or
+     * after the given position, or the end of the mapping if there is none.
+     */
+    private static int lineStartAtOrAfter(
+            final MappedByteBuffer mapped,
+            final int position,
+            final long mapStart,
+            final long fileSize
+    ) throws IOException {
+        final int limit = mapped.limit();
+        for (int i = position; i < limit; i++) {
+            if (mapped.get(i - 1) == '\n') {
+                return i;
+            }
+        }
+        if (mapStart + limit < fileSize) {
+            throw new IOException("A line starting near byte " + (mapStart + position) + " is too long to map.");
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,165 @@
+package com.mcherm.versionedserialization.migration;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The steps of a MigrationPlan organized as a trie keyed on the components of their
+ * field names. Each {@link Node} stands for one position in a document: its
+ * {@link Node#getLeafStep(String) leaf steps} apply to fields of the object found there, its
+ * {@link Node#getChild(String) children} lead into fields of that object, and its
+ * {@link Node#getElements() elements} node (if any) applies to every element of the
+ * array found there (the "[]" in a field name).
+ *
+ * <p>For example, a step for "shelf/boxes[]color" is found by going from the root to
+ * the child "shelf", then to its child "boxes", then to its elements, where it is a
+ * leaf step for the field "color".
+ *
+ * <p>Once built, a PathTrie is never modified and is safe to share between threads.
+ */
+final class PathTrie {
+    private final Node root;
+
+    /** One position in the document; see the class comment. */
+    static final class Node {
+        private final String path;
+        private final Map<String, MigrationStep> leafSteps = new LinkedHashMap<>();
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        @Nullable
+        private Node elements = null;
+        private boolean containsRuleSteps = false;
+        // The same contents as leafSteps and children, as arrays so they can be walked
+        // once per element of a large array without allocating an Iterator each time.
+        private String[] leafFieldNames;
+        private MigrationStep[] leafStepArray;
+        private String[] childFieldNames;
+        private Node[] childArray;
+
+        /** Constructor. */
+        private Node(final String path) {
+            this.path = path;
+        }
+
+        /** The path to this position (like "shelf/boxes[]"), for use in error messages. */
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * The names of the fields that have leaf steps, in the same order as
+         * {@link #getLeafStepArray()}. The array must not be modified.
+         */
+        String[] getLeafFieldNames() {
+            return leafFieldNames;
+        }
+
+        /**
+         * The leaf steps, in the same order as {@link #getLeafFieldNames()}. The array
+         * must not be modified.
+         */
+        MigrationStep[] getLeafStepArray() {
+            return leafStepArray;
+        }
+
+        /** Returns the step for the given field of this object, or null if there isn't one. */
+        @Nullable
+        MigrationStep getLeafStep(final String fieldName) {
+            return leafSteps.get(fieldName);
+        }
+
+        /**
+         * The names of the fields that have children, in the same order as
+         * {@link #getChildArray()}. The array must not be modified.
+         */
+        String[] getChildFieldNames() {
+            return childFieldNames;
+        }
+
+        /**
+         * The children, in the same order as {@link #getChildFieldNames()}. The array
+         * must not be modified.
+         */
+        Node[] getChildArray() {
+            return childArray;
+        }
+
+        /** Returns the node for the given field of this object, or null if nothing beneath it changes. */
+        @Nullable
+        Node getChild(final String fieldName) {
+            return children.get(fieldName);
+        }
+
+        /** Returns the node applying to each element of this array, or null if no elements change. */
+        @Nullable
+        Node getElements() {
+            return elements;
+        }
+
+        /** True if any step at or beneath this node calls an UpdateRule. */
+        boolean containsRuleSteps() {
+            return containsRuleSteps;
+        }
+
+        /** Fills in the arrays, once all steps have been added. */
+        private void freeze() {
+            leafFieldNames = leafSteps.keySet().toArray(String[]::new);
+            leafStepArray = leafSteps.values().toArray(MigrationStep[]::new);
+            childFieldNames = children.keySet().toArray(String[]::new);
+            childArray = children.values().toArray(Node[]::new);
+            for (Node child : childArray) {
+                child.freeze();
+            }
+            if (elements != null) {
+                elements.freeze();
+            }
+        }
+    }
+
+    /** Constructor. Builds the trie from a list of steps. */
+    PathTrie(final List<MigrationStep> steps) {
+        this.root = new Node("");
+        for (MigrationStep step : steps) {
+            addStep(step);
+        }
+        root.freeze();
+    }
+
+    /** Returns the node for the root of the document. */
+    Node getRoot() {
+        return root;
+    }
+
+    private void addStep(final MigrationStep step) {
+        final List<String[]> segments = step.getSegments();
+        final boolean isRuleStep = step.getAction() == MigrationStep.Action.APPLY_RULE;
+        Node node = root;
+        node.containsRuleSteps |= isRuleStep;
+        for (int i = 0; i < segments.size(); i++) {
+            final String[] components = segments.get(i);
+            final boolean isLastSegment = i == segments.size() - 1;
+            final int componentsToDescend = isLastSegment ? components.length - 1 : components.length;
+            for (int j = 0; j < componentsToDescend; j++) {
+                final Node parent = node;
+                node = node.children.computeIfAbsent(components[j], name -> new Node(
+                        parent.path.isEmpty() || parent.path.endsWith("[]") ? parent.path + name : parent.path + "/" + name));
+                node.containsRuleSteps |= isRuleStep;
+            }
+            if (!isLastSegment) {
+                if (node.elements == null) {
+                    node.elements = new Node(node.path + "[]");
+                }
+                node = node.elements;
+                node.containsRuleSteps |= isRuleStep;
+            }
+        }
+        final String[] lastComponents = segments.getLast();
+        final String fieldName = lastComponents[lastComponents.length - 1];
+        if (node.leafSteps.containsKey(fieldName)) {
+            throw new RuntimeException("More than one step for the field '" + step.getFieldName() + "'.");
+        }
+        node.leafSteps.put(fieldName, step);
+    }
+}
@@ -0,0 +1,49 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * An UpdateRule whose result depends on nothing but the values found at a few paths in
+ * the source document (and the name of the field being populated). The Migrator takes
+ * advantage of this by remembering the result for each distinct set of input values, so
+ * an expensive rule runs once per distinct input instead of once per document.
+ *
+ * <p>A rule that implements this must read only the paths it lists, must return the
+ * same result whenever those values are the same, and must be safe to call from several
+ * threads at once.
+ */
+public interface PureUpdateRule extends UpdateRule {
+
+    /** The "/"-separated paths of the source values this rule reads. */
+    List<String> getSourcePaths();
+
+    /** The most results to remember for a single field. */
+    default int getMaxCachedResults() {
+        return 1000;
+    }
+
+    /**
+     * Returns a PureUpdateRule that reads the given source paths and calculates its
+     * result with the given UpdateRule.
+     *
+     * @param sourcePaths the "/"-separated paths of the source values the rule reads
+     * @param updateRule the rule, which must read only those paths
+     * @return the PureUpdateRule
+     */
+    static PureUpdateRule of(final List<String> sourcePaths, final UpdateRule updateRule) {
+        final List<String> paths = List.copyOf(sourcePaths);
+        return new PureUpdateRule() {
+            @Override
+            public List<String> getSourcePaths() {
+                return paths;
+            }
+
+            @Override
+            public JsonNode mapField(final UpdateContext updateContext, final String fieldToPopulate) {
+                return updateRule.mapField(updateContext, fieldToPopulate);
+            }
+        };
+    }
+}
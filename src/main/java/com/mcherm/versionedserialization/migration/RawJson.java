@@ -0,0 +1,115 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.core.SerializableString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A slice of a byte array holding some UTF-8 encoded JSON, which can be passed to
+ * {@link com.fasterxml.jackson.core.JsonGenerator#writeRawValue(SerializableString)}
+ * to copy it to the output without decoding it. Only the unquoted forms are supported,
+ * since the JSON is written as it is.
+ */
+final class RawJson implements SerializableString {
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
+
+    RawJson(final byte[] buffer, final int offset, final int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public String getValue() {
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int charLength() {
+        return getValue().length();
+    }
+
+    @Override
+    public byte[] asUnquotedUTF8() {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+
+    @Override
+    public int appendUnquotedUTF8(final byte[] out, final int outOffset) {
+        if (outOffset + length > out.length) {
+            return -1;
+        }
+        System.arraycopy(buffer, offset, out, outOffset, length);
+        return length;
+    }
+
+    @Override
+    public int appendUnquoted(final char[] out, final int outOffset) {
+        final String value = getValue();
+        if (outOffset + value.length() > out.length) {
+            return -1;
+        }
+        value.getChars(0, value.length(), out, outOffset);
+        return value.length();
+    }
+
+    @Override
+    public int writeUnquotedUTF8(final OutputStream out) throws IOException {
+        out.write(buffer, offset, length);
+        return length;
+    }
+
+    @Override
+    public int putUnquotedUTF8(final ByteBuffer out) {
+        if (out.remaining() < length) {
+            return -1;
+        }
+        out.put(buffer, offset, length);
+        return length;
+    }
+
+    @Override
+    public char[] asQuotedChars() {
+        throw quotingUnsupported();
+    }
+
+    @Override
+    public byte[] asQuotedUTF8() {
+        throw quotingUnsupported();
+    }
+
+    @Override
+    public int appendQuotedUTF8(final byte[] out, final int outOffset) {
+        throw quotingUnsupported();
+    }
+
+    @Override
+    public int appendQuoted(final char[] out, final int outOffset) {
+        throw quotingUnsupported();
+    }
+
+    @Override
+    public int writeQuotedUTF8(final OutputStream out) {
+        throw quotingUnsupported();
+    }
+
+    @Override
+    public int putQuotedUTF8(final ByteBuffer out) {
+        throw quotingUnsupported();
+    }
+
+    private static UnsupportedOperationException quotingUnsupported() {
+        return new UnsupportedOperationException("Raw JSON is never quoted.");
+    }
+
+    @Override
+    public String toString() {
+        return getValue();
+    }
+}
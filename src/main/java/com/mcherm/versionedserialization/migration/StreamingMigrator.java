@@ -0,0 +1,321 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mcherm.versionedserialization.SerializationUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+/**
+ * Migrates a serialized document in a single pass over its tokens, reading the source
+ * with a JsonParser and writing the target with a JsonGenerator, without ever building
+ * a JsonNode tree. Dropped fields are skipped as they are read and default values are
+ * written just before the object that should contain them is closed, so the memory used
+ * does not grow with the size of the document.
+ *
+ * <p>This only works for a MigrationPlan where every step is a Drop or a DefaultingAdd
+ * that just uses the default value. If the plan {@link MigrationPlan#requiresWholeDocument()
+ * requires the whole document} (because some UpdateRule needs to see it) the document
+ * is read into a tree and migrated with a {@link Migrator} instead.
+ *
+ * <p>When the source is given as a String or a byte array, any object or array that no
+ * step touches is copied to the output exactly as it appears in the source, without its
+ * strings and numbers being decoded and encoded again, so the work done depends mostly
+ * on the size of the parts of the document that change.
+ *
+ * <p>Unlike the Migrator, this does not complain if the document is missing an object
+ * that some step needs to reach: there is nothing to drop and nowhere to put a default,
+ * so that part of the document is copied as-is.
+ */
+public class StreamingMigrator {
+
+    /** Used to write default values without flushing the generator after each one. */
+    private static final ObjectWriter valueWriter = SerializationUtil.getObjectMapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final Migrator migrator;
+
+    /** Constructor. */
+    public StreamingMigrator() {
+        this(new Migrator());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param migrator the Migrator to use for plans that require the whole document
+     */
+    public StreamingMigrator(final Migrator migrator) {
+        this.migrator = migrator;
+    }
+
+    /**
+     * Reads one JSON document in the plan's source format from the parser and writes it
+     * in the plan's target format to the generator. The parser may be positioned before
+     * the document or on its first token; when this returns, it is positioned on the
+     * document's last token.
+     *
+     * <p>The parser may also be positioned on a FIELD_NAME or END_OBJECT inside an object
+     * whose start has already been read. That is what Jackson does when it hands a
+     * polymorphic subtype's deserializer the rest of an object after reading its type id.
+     * The remaining fields are then migrated as an object, which is written in full
+     * (START_OBJECT included) to the generator.
+     *
+     * @param migrationPlan the plan to follow
+     * @param parser where to read the source document from
+     * @param generator where to write the target document to
+     */
+    public void migrate(
+            final MigrationPlan migrationPlan,
+            final JsonParser parser,
+            final JsonGenerator generator
+    ) throws IOException {
+        migrate(migrationPlan, parser, generator, null);
+    }
+
+    /**
+     * Does the work of {@link #migrate(MigrationPlan, JsonParser, JsonGenerator)}. If
+     * rawSource is not null, it must hold the content the parser is reading.
+     */
+    private void migrate(
+            final MigrationPlan migrationPlan,
+            final JsonParser parser,
+            final JsonGenerator generator,
+            @Nullable final RawSource rawSource
+    ) throws IOException {
+        if (!parser.hasCurrentToken() && parser.nextToken() == null) {
+            throw new IOException("No JSON document to migrate.");
+        }
+        final ObjectMapper objectMapper = SerializationUtil.getObjectMapper();
+        final JsonToken token = parser.currentToken();
+        final boolean insideObject = token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT;
+        if (migrationPlan.isIdentity() && !insideObject) {
+            generator.copyCurrentStructure(parser);
+        } else if (migrationPlan.requiresWholeDocument()) {
+            final JsonNode sourceDocument = objectMapper.readTree(parser);
+            objectMapper.writeTree(generator, migrator.migrate(migrationPlan, sourceDocument));
+        } else if (insideObject) {
+            migrateFields(parser, generator, migrationPlan.getPathTrie().getRoot(), rawSource);
+        } else {
+            migrateValue(parser, generator, migrationPlan.getPathTrie().getRoot(), rawSource);
+        }
+    }
+
+    /**
+     * Reads one JSON document in the plan's source format from an InputStream and writes
+     * it in the plan's target format to an OutputStream. Neither stream is closed. If
+     * the plan {@link MigrationPlan#isIdentity() is an identity}, the bytes are copied
+     * across unchanged without being parsed at all.
+     *
+     * @param migrationPlan the plan to follow
+     * @param source where to read the source document from
+     * @param target where to write the target document to
+     */
+    public void migrate(
+            final MigrationPlan migrationPlan,
+            final InputStream source,
+            final OutputStream target
+    ) throws IOException {
+        if (migrationPlan.isIdentity()) {
+            source.transferTo(target);
+            return;
+        }
+        final ObjectMapper objectMapper = SerializationUtil.getObjectMapper();
+        try (
+                final JsonParser parser = objectMapper.createParser(source);
+                final JsonGenerator generator = objectMapper.createGenerator(target)
+        ) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            migrate(migrationPlan, parser, generator);
+        }
+    }
+
+    /**
+     * Migrates a JSON document in the plan's source format, given as a String, returning
+     * the JSON for the document in the plan's target format. If the plan is an identity,
+     * the source String itself is returned.
+     *
+     * @param migrationPlan the plan to follow
+     * @param sourceJson the source document
+     * @return the target document
+     */
+    public String migrate(final MigrationPlan migrationPlan, final String sourceJson) {
+        if (migrationPlan.isIdentity()) {
+            return sourceJson;
+        }
+        final ObjectMapper objectMapper = SerializationUtil.getObjectMapper();
+        final StringWriter writer = new StringWriter(sourceJson.length());
+        try (
+                final JsonParser parser = objectMapper.createParser(sourceJson);
+                final JsonGenerator generator = objectMapper.createGenerator(writer)
+        ) {
+            migrate(migrationPlan, parser, generator, new RawSource(null, sourceJson));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to migrate JSON", e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Migrates a UTF-8 encoded JSON document in the plan's source format, held in a byte
+     * array, and writes it in the plan's target format to an OutputStream, which is not
+     * closed. Objects and arrays that no step touches are copied straight from the array.
+     *
+     * @param migrationPlan the plan to follow
+     * @param source the source document
+     * @param target where to write the target document to
+     */
+    public void migrate(
+            final MigrationPlan migrationPlan,
+            final byte[] source,
+            final OutputStream target
+    ) throws IOException {
+        if (migrationPlan.isIdentity()) {
+            target.write(source);
+            return;
+        }
+        final ObjectMapper objectMapper = SerializationUtil.getObjectMapper();
+        try (
+                final JsonParser parser = objectMapper.createParser(source);
+                final JsonGenerator generator = objectMapper.createGenerator(target)
+        ) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            migrate(migrationPlan, parser, generator, new RawSource(source, null));
+        }
+    }
+
+    /**
+     * Copies the value the parser is positioned on (which may be an object or array) to
+     * the generator, applying the steps found at or beneath the given node. When this
+     * returns, the parser is positioned on the last token of the value.
+     *
+     * @param parser positioned on the first token of the value
+     * @param generator where the value is written
+     * @param node the node of the PathTrie for this position, or null if nothing here changes
+     * @param rawSource the content being parsed, or null if it isn't available
+     */
+    private void migrateValue(
+            final JsonParser parser,
+            final JsonGenerator generator,
+            @Nullable final PathTrie.Node node,
+            @Nullable final RawSource rawSource
+    ) throws IOException {
+        if (node == null) {
+            if (rawSource != null) {
+                rawSource.copyCurrentStructure(parser, generator);
+            } else {
+                generator.copyCurrentStructure(parser);
+            }
+        } else if (parser.currentToken() == JsonToken.START_OBJECT) {
+            migrateObject(parser, generator, node, rawSource);
+        } else if (parser.currentToken() == JsonToken.START_ARRAY && node.getElements() != null) {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                migrateValue(parser, generator, node.getElements(), rawSource);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * Copies an object, skipping any fields that are dropped (or that will be replaced
+     * with a default) and then writing the default values just before the end.
+     *
+     * @param parser positioned on the START_OBJECT token
+     * @param generator where the object is written
+     * @param node the node of the PathTrie for this object
+     * @param rawSource the content being parsed, or null if it isn't available
+     */
+    private void migrateObject(
+            final JsonParser parser,
+            final JsonGenerator generator,
+            final PathTrie.Node node,
+            @Nullable final RawSource rawSource
+    ) throws IOException {
+        parser.nextToken();
+        migrateFields(parser, generator, node, rawSource);
+    }
+
+    /**
+     * Does the work of {@link #migrateObject} starting from the first field, writing the
+     * START_OBJECT and everything after it.
+     *
+     * @param parser positioned on the object's first FIELD_NAME, or on its END_OBJECT
+     * @param generator where the object is written
+     * @param node the node of the PathTrie for this object
+     * @param rawSource the content being parsed, or null if it isn't available
+     */
+    private void migrateFields(
+            final JsonParser parser,
+            final JsonGenerator generator,
+            final PathTrie.Node node,
+            @Nullable final RawSource rawSource
+    ) throws IOException {
+        generator.writeStartObject();
+        for (JsonToken token = parser.currentToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            final String fieldName = parser.currentName();
+            parser.nextToken();
+            if (node.getLeafStep(fieldName) != null) {
+                // it is dropped, or will be replaced by a default below
+                parser.skipChildren();
+            } else {
+                generator.writeFieldName(fieldName);
+                migrateValue(parser, generator, node.getChild(fieldName), rawSource);
+            }
+        }
+        final String[] leafFieldNames = node.getLeafFieldNames();
+        final MigrationStep[] leafSteps = node.getLeafStepArray();
+        for (int i = 0; i < leafSteps.length; i++) {
+            if (leafSteps[i].getAction() == MigrationStep.Action.SET_DEFAULT) {
+                generator.writeFieldName(leafFieldNames[i]);
+                valueWriter.writeValue(generator, leafSteps[i].getDefaultValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * The content a parser is reading, as either UTF-8 bytes or a String (exactly one of
+     * which is non-null), so that parts of it can be copied to the output unchanged.
+     */
+    private record RawSource(byte @Nullable [] bytes, @Nullable String chars) {
+
+        /**
+         * Copies the value the parser is positioned on to the generator. An object or
+         * array is skipped over by the parser and its text is written as it is; a scalar
+         * is copied the usual way. When this returns, the parser is positioned on the
+         * last token of the value.
+         */
+        void copyCurrentStructure(final JsonParser parser, final JsonGenerator generator) throws IOException {
+            final JsonToken token = parser.currentToken();
+            if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+                generator.copyCurrentStructure(parser);
+                return;
+            }
+            final JsonLocation start = parser.currentTokenLocation();
+            parser.skipChildren();
+            final JsonLocation end = parser.currentLocation();
+            if (bytes != null) {
+                final int offset = (int) start.getByteOffset();
+                generator.writeRawValue(new RawJson(bytes, offset, (int) end.getByteOffset() - offset));
+            } else {
+                assert chars != null;
+                final int offset = (int) start.getCharOffset();
+                generator.writeRawValue(chars, offset, (int) end.getCharOffset() - offset);
+            }
+        }
+    }
+}
@@ -1,29 +1,110 @@
 package com.mcherm.versionedserialization.migration;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.mcherm.versionedserialization.schemadiff.path.Lookup;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
 import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This contains the information that's available to an UpdateRule.
  */
 public class UpdateContext {
-    private final JsonNode sourceDocument;
-    private final SchemaInfo sourceSchema;
-    private final SchemaInfo targetSchema;
+    private JsonNode sourceDocument;
+    /** The schemas; null only while the context is pooled. */
+    private SchemaInfo sourceSchema;
+    private SchemaInfo targetSchema;
+    /**
+     * Null normally. When the source document is being migrated in place, this holds the
+     * steps that will be applied to it, so we know which values need to be snapshotted.
+     */
+    @Nullable
+    private PathTrie pendingChanges;
+    /**
+     * The values read so far from this document, so each path is only navigated once no
+     * matter how many times (or for how many array elements) rules read it. While migrating
+     * in place these are the snapshots where needed. This may be used from several threads
+     * at once when a large array is migrated in parallel.
+     */
+    private final Map<FieldPath, Optional<JsonNode>> sourceValues = new ConcurrentHashMap<>();
+    /** Paths whose values were looked up in advance by {@link #prefetch}, or null. */
+    private FieldPath @Nullable [] prefetchedPaths;
+    /** The values found at the prefetchedPaths (null where there was nothing). */
+    private @Nullable JsonNode @Nullable [] prefetchedValues;
 
     public UpdateContext(
             final SchemaInfo sourceSchema,
             final SchemaInfo targetSchema,
             final JsonNode sourceDocument
+    ) {
+        this(sourceSchema, targetSchema, sourceDocument, null);
+    }
+
+    /**
+     * Constructor used when the sourceDocument is going to be migrated in place.
+     *
+     * @param pendingChanges the steps that will later be applied to the sourceDocument,
+     *                       or null if the sourceDocument will never be modified
+     */
+    UpdateContext(
+            final SchemaInfo sourceSchema,
+            final SchemaInfo targetSchema,
+            final JsonNode sourceDocument,
+            @Nullable final PathTrie pendingChanges
+    ) {
+        this.sourceSchema = sourceSchema;
+        this.targetSchema = targetSchema;
+        this.sourceDocument = sourceDocument;
+        this.pendingChanges = pendingChanges;
+    }
+
+    /**
+     * Makes this context ready to be used for another document, forgetting everything
+     * about the last one. This is only for a context that no UpdateRule can still be
+     * using.
+     *
+     * @param pendingChanges the steps that will later be applied to the sourceDocument,
+     *                       or null if the sourceDocument will never be modified
+     */
+    void reset(
+            final SchemaInfo sourceSchema,
+            final SchemaInfo targetSchema,
+            final JsonNode sourceDocument,
+            @Nullable final PathTrie pendingChanges
     ) {
         this.sourceSchema = sourceSchema;
         this.targetSchema = targetSchema;
         this.sourceDocument = sourceDocument;
+        this.pendingChanges = pendingChanges;
+        this.sourceValues.clear();
+        this.prefetchedPaths = null;
+        this.prefetchedValues = null;
     }
 
+    /**
+     * Forgets the document, schemas and values this context was used for, so that a
+     * pooled context doesn't keep them alive. It must be {@link #reset} before it is
+     * used again.
+     */
+    void clear() {
+        this.sourceSchema = null;
+        this.targetSchema = null;
+        this.sourceDocument = MissingNode.getInstance();
+        this.pendingChanges = null;
+        this.sourceValues.clear();
+        this.prefetchedPaths = null;
+        this.prefetchedValues = null;
+    }
+
+    /**
+     * Returns the source document. If the document is being migrated in place, the
+     * UpdateRules are all called before it is changed, but a rule should not hold on
+     * to pieces of it after returning; use {@link #getSourceValue} for that.
+     */
     public JsonNode getSourceDocument() {
         return sourceDocument;
     }
@@ -36,7 +117,109 @@ public class UpdateContext {
         return sourceSchema;
     }
 
+    /**
+     * Returns the value of a field in the source document, or Empty if it does not exist.
+     * If the document is being migrated in place and something beneath this field is
+     * going to be changed, this returns a copy taken before the change, so it is always
+     * safe to use the value in what the UpdateRule returns.
+     */
     public Optional<JsonNode> getSourceValue(String fieldName) {
-        return Lookup.getField(fieldName, sourceDocument);
+        return getSourceValue(FieldPath.of(fieldName));
+    }
+
+    /**
+     * Same as {@link #getSourceValue(String)}, but for a field whose path has already
+     * been split, which is faster for a rule that runs many times.
+     */
+    public Optional<JsonNode> getSourceValue(FieldPath fieldPath) {
+        final Optional<JsonNode> known = sourceValues.get(fieldPath);
+        return known != null ? known : remember(fieldPath, findValue(fieldPath));
+    }
+
+    /**
+     * Returns the values of several fields in the source document, in the same order as
+     * the paths, with null for each one that does not exist. This goes through the
+     * document once, so the objects the fields have in common are only navigated once.
+     * As with {@link #getSourceValue(String)}, the values are safe to use in what the
+     * UpdateRule returns.
+     *
+     * @param fieldPaths the fields to read
+     * @return an array holding the value of each field, or null
+     */
+    public @Nullable JsonNode[] getSourceValues(FieldPath... fieldPaths) {
+        final JsonNode[] values = new JsonNode[fieldPaths.length];
+        JsonNode[] found = null;
+        for (int i = 0; i < fieldPaths.length; i++) {
+            Optional<JsonNode> known = sourceValues.get(fieldPaths[i]);
+            if (known == null) {
+                if (found == null && prefetchedPaths == null) {
+                    found = FieldPath.findAll(sourceDocument, fieldPaths);
+                }
+                known = remember(fieldPaths[i], found != null ? found[i] : findValue(fieldPaths[i]));
+            }
+            values[i] = known.orElse(null);
+        }
+        return values;
+    }
+
+    /**
+     * Looks up the given paths all at once, in a single pass through the source document,
+     * and remembers the values so that later reads of those paths don't navigate the
+     * document again. The Migrator calls this with the paths the plan's PureUpdateRules
+     * read, before calling any of them.
+     */
+    void prefetch(final FieldPath[] fieldPaths) {
+        if (fieldPaths.length > 0) {
+            this.prefetchedValues = FieldPath.findAll(sourceDocument, fieldPaths);
+            this.prefetchedPaths = fieldPaths;
+        }
+    }
+
+    /** Finds a value in the source document (or among the prefetched values). */
+    @Nullable
+    private JsonNode findValue(final FieldPath fieldPath) {
+        if (prefetchedPaths != null) {
+            assert prefetchedValues != null;
+            for (int i = 0; i < prefetchedPaths.length; i++) {
+                if (prefetchedPaths[i].equals(fieldPath)) {
+                    return prefetchedValues[i];
+                }
+            }
+        }
+        return fieldPath.find(sourceDocument);
+    }
+
+    /**
+     * Records the value that was found at a path and returns it, unless the document is
+     * being migrated in place and something beneath it is going to change, in which case
+     * a copy taken before the change is recorded and returned instead. If another thread
+     * recorded the same path first, its value is the one returned.
+     */
+    private Optional<JsonNode> remember(final FieldPath fieldPath, @Nullable final JsonNode value) {
+        final Optional<JsonNode> safeValue =
+                value != null && pendingChanges != null && willChangeBeneath(pendingChanges, fieldPath)
+                        ? Optional.of(value.deepCopy())
+                        : Optional.ofNullable(value);
+        final Optional<JsonNode> earlier = sourceValues.putIfAbsent(fieldPath, safeValue);
+        return earlier != null ? earlier : safeValue;
+    }
+
+    /**
+     * Returns true if some step in the trie changes something strictly beneath the given
+     * field. (A step that changes the field itself replaces or removes the node without
+     * modifying it, so it doesn't matter here.)
+     */
+    private static boolean willChangeBeneath(final PathTrie pathTrie, final FieldPath fieldPath) {
+        if (fieldPath.hasArraySteps()) {
+            return false; // it can't be read anyway
+        }
+        PathTrie.Node node = pathTrie.getRoot();
+        for (int i = 0; i < fieldPath.size(); i++) {
+            node = node.getChild(fieldPath.getComponent(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
     }
 }
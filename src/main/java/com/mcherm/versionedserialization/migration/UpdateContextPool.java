@@ -0,0 +1,59 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UpdateContexts which have been used and can be reset for another document. A Migrator
+ * that reuses contexts has one of these, shared by every thread that uses the Migrator
+ * (so it works just as well on virtual threads, which are never reused). It takes a
+ * context for each document of a batch and gives them all back once the batch is
+ * finished, so migrating batch after batch stops creating a new context (and its map
+ * of values read) for every document.
+ */
+final class UpdateContextPool {
+    /** The most contexts kept at once. */
+    private static final int MAX_POOLED = 256;
+
+    private final Queue<UpdateContext> pooled = new ConcurrentLinkedQueue<>();
+    /** The number of contexts in pooled (which a ConcurrentLinkedQueue can't tell quickly). */
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * Returns an UpdateContext for migrating a document with the given plan, reusing one
+     * of the pooled contexts if there is one.
+     *
+     * @param migrationPlan the plan the document will be migrated with
+     * @param sourceDocument the document in the source format
+     * @param inPlace true if the sourceDocument itself is going to be migrated
+     */
+    UpdateContext take(final MigrationPlan migrationPlan, final JsonNode sourceDocument, final boolean inPlace) {
+        final UpdateContext updateContext = pooled.poll();
+        if (updateContext == null) {
+            return migrationPlan.newUpdateContext(sourceDocument, inPlace);
+        }
+        pooledCount.decrementAndGet();
+        migrationPlan.resetUpdateContext(updateContext, sourceDocument, inPlace);
+        return updateContext;
+    }
+
+    /**
+     * Gives contexts back to the pool. They are cleared right away so the pool doesn't
+     * keep the documents or schemas they were used for alive. Nothing may use them
+     * afterward.
+     */
+    void release(final List<UpdateContext> updateContexts) {
+        for (UpdateContext updateContext : updateContexts) {
+            if (pooledCount.incrementAndGet() > MAX_POOLED) {
+                pooledCount.decrementAndGet();
+                break;
+            }
+            updateContext.clear();
+            pooled.add(updateContext);
+        }
+    }
+}
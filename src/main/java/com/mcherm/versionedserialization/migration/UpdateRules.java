@@ -41,7 +41,15 @@ public class UpdateRules {
         } catch (UnsupportedSchemaFeature err) {
             throw new RuntimeException("Schema had unsupported feature: " + err.getMessage());
         }
-        final SchemaDeltas schemaDeltas = SchemaDiffer.diff(sourceSchemaParsed, targetSchemaParsed);
+        return missingRules(SchemaDiffer.diff(sourceSchemaParsed, targetSchemaParsed));
+    }
+
+    /**
+     * This is used to check whether a set of rules is complete. It is given the
+     * SchemaDeltas for a migration and returns a list of any fields that need rules.
+     * If the set of rules is complete it will return an empty list.
+     */
+    public List<String> missingRules(SchemaDeltas schemaDeltas) {
         return schemaDeltas.getDeltas().stream()
                 .map(Delta::getFieldName)
                 .filter(fieldName -> !updateRules.containsKey(fieldName))
@@ -0,0 +1,218 @@
+package com.mcherm.versionedserialization.schemadiff;
+
+import com.mcherm.versionedserialization.schemadiff.deltas.Add;
+import com.mcherm.versionedserialization.schemadiff.deltas.Change;
+import com.mcherm.versionedserialization.schemadiff.deltas.CustomAdd;
+import com.mcherm.versionedserialization.schemadiff.deltas.DefaultingAdd;
+import com.mcherm.versionedserialization.schemadiff.deltas.Delta;
+import com.mcherm.versionedserialization.schemadiff.deltas.Drop;
+import com.mcherm.versionedserialization.schemadiff.deltas.SchemaDeltas;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+import com.mcherm.versionedserialization.schemadiff.schema.NormalSubschema;
+import com.mcherm.versionedserialization.schemadiff.schema.Properties;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contains a function to compose the SchemaDeltas for going from schema A to schema B with
+ * the SchemaDeltas for going from B to C, giving a single SchemaDeltas for going from A to C.
+ * Applying the result to a document has the same effect as applying the two one after the
+ * other, but fields that are added and then dropped again are never touched, and other
+ * pairs of Deltas on the same field are collapsed into one. (Where the result adds or
+ * changes a field whose type the second set of deltas modified on the inside, the
+ * UpdateRule for that field must now produce a value of the final type.)
+ */
+public class DeltaComposer {
+
+    /**
+     * Composes two SchemaDeltas. The Deltas on each field combine as follows (where the
+     * first one listed comes from first and the second from second):
+     * <ul>
+     *     <li>Add then Drop: the field is never touched.</li>
+     *     <li>Add then Change: a CustomAdd of the changed type.</li>
+     *     <li>Drop then Add: the Add (which replaces whatever value was there).</li>
+     *     <li>Change then Change: a single Change from the original type to the final one.</li>
+     *     <li>Change then Drop: a Drop.</li>
+     * </ul>
+     * Deltas from first that apply inside a field which second drops or changes are left
+     * out, since that field's value gets discarded anyway. Deltas from second that apply
+     * inside a field which the result adds or changes are folded into that Add or Change,
+     * which takes on the field's type from targetSchema, since the whole value is
+     * replaced at once.
+     *
+     * @param first the SchemaDeltas going from A to B
+     * @param second the SchemaDeltas going from B to C
+     * @param targetSchema the schema C
+     * @return the SchemaDeltas going from A to C
+     */
+    public static SchemaDeltas compose(
+            final SchemaDeltas first,
+            final SchemaDeltas second,
+            final SchemaInfo targetSchema
+    ) {
+        final Map<String, Delta> secondByField = new LinkedHashMap<>();
+        for (Delta delta : second.getDeltas()) {
+            secondByField.put(delta.getFieldName(), delta);
+        }
+        final Set<String> usedFromSecond = new HashSet<>();
+        final List<String> replacedBySecond = replacingFields(second.getDeltas());
+        final List<String> replacedFields = new ArrayList<>();
+
+        final SchemaDeltas result = new SchemaDeltas();
+        for (Delta firstDelta : first.getDeltas()) {
+            final String fieldName = firstDelta.getFieldName();
+            final Delta secondDelta = secondByField.get(fieldName);
+            final Delta composed;
+            if (secondDelta != null) {
+                usedFromSecond.add(fieldName);
+                composed = combine(firstDelta, secondDelta);
+                if (composed == null) {
+                    continue;
+                }
+            } else if (isInsideAny(fieldName, replacedBySecond)) {
+                continue;
+            } else {
+                composed = firstDelta;
+            }
+            if (!(composed instanceof Drop)
+                    && second.getDeltas().stream().anyMatch(delta -> isInside(delta.getFieldName(), fieldName))) {
+                // the whole value is set at once, so it must already have the final type
+                result.addDelta(withSubschema(composed, subschemaAt(targetSchema, fieldName)));
+                replacedFields.add(fieldName);
+            } else {
+                result.addDelta(composed);
+            }
+        }
+        for (Delta secondDelta : second.getDeltas()) {
+            final String fieldName = secondDelta.getFieldName();
+            if (!usedFromSecond.contains(fieldName) && !isInsideAny(fieldName, replacedFields)) {
+                result.addDelta(secondDelta);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Composes a whole series of SchemaDeltas, each of which goes from the schema the
+     * previous one ended with.
+     *
+     * @param versions the schemas, in order; there must be one more of these than
+     *                 there are SchemaDeltas
+     * @param schemaDeltasList the SchemaDeltas in order; the one at index i goes from
+     *                         versions[i] to versions[i+1]. Must not be empty.
+     * @return the SchemaDeltas going from the first schema to the last
+     */
+    public static SchemaDeltas compose(final List<SchemaInfo> versions, final List<SchemaDeltas> schemaDeltasList) {
+        if (schemaDeltasList.isEmpty() || versions.size() != schemaDeltasList.size() + 1) {
+            throw new IllegalArgumentException(
+                    "Expected one more version than SchemaDeltas but got " + versions.size()
+                            + " versions and " + schemaDeltasList.size() + " SchemaDeltas.");
+        }
+        SchemaDeltas result = schemaDeltasList.getFirst();
+        for (int i = 1; i < schemaDeltasList.size(); i++) {
+            result = compose(result, schemaDeltasList.get(i), versions.get(i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Combines two Deltas for the same field, returning the single Delta with the same
+     * effect, or null if together they have no effect at all.
+     */
+    @Nullable
+    private static Delta combine(final Delta firstDelta, final Delta secondDelta) {
+        final String fieldName = firstDelta.getFieldName();
+        return switch (firstDelta) {
+            case Add firstAdd -> switch (secondDelta) {
+                case Drop drop -> null;
+                case Change change -> new CustomAdd(fieldName, change.getEndingSubschema());
+                case Add add -> throw notComposable(firstDelta, secondDelta);
+            };
+            case Drop firstDrop -> switch (secondDelta) {
+                case DefaultingAdd add -> add;
+                case CustomAdd add -> add;
+                case Drop drop -> throw notComposable(firstDelta, secondDelta);
+                case Change change -> throw notComposable(firstDelta, secondDelta);
+            };
+            case Change firstChange -> switch (secondDelta) {
+                case Drop drop -> new Drop(fieldName, firstChange.getStartingSubschema());
+                case Change change -> new Change(
+                        fieldName, firstChange.getStartingSubschema(), change.getEndingSubschema());
+                case Add add -> throw notComposable(firstDelta, secondDelta);
+            };
+        };
+    }
+
+    /** Returns the fields that the deltas drop or change (so anything inside them is discarded). */
+    private static List<String> replacingFields(final List<Delta> deltas) {
+        return deltas.stream()
+                .filter(delta -> delta instanceof Drop || delta instanceof Change)
+                .map(Delta::getFieldName)
+                .toList();
+    }
+
+    /** Returns true if the field is strictly inside any of the outer fields. */
+    private static boolean isInsideAny(final String fieldName, final List<String> outerFields) {
+        return outerFields.stream().anyMatch(outer -> isInside(fieldName, outer));
+    }
+
+    /** Returns true if the field is strictly inside the outer field. */
+    private static boolean isInside(final String fieldName, final String outer) {
+        return fieldName.startsWith(outer + "/") || fieldName.startsWith(outer + "[]");
+    }
+
+    /**
+     * Returns a Delta like the given Add or Change which ends with a different type. An
+     * Add becomes a DefaultingAdd or a CustomAdd according to the new type, just as
+     * SchemaDiffer would decide.
+     */
+    private static Delta withSubschema(final Delta delta, final NormalSubschema subschema) {
+        final String fieldName = delta.getFieldName();
+        return switch (delta) {
+            case Change change -> new Change(fieldName, change.getStartingSubschema(), subschema);
+            case Add add -> DefaultableClasses.getDefault(subschema.getJavaType())
+                    .<Delta>map(defaultValue -> new DefaultingAdd(fieldName, subschema, defaultValue))
+                    .orElseGet(() -> new CustomAdd(fieldName, subschema));
+            case Drop drop -> throw new IllegalArgumentException("A Drop has no ending type.");
+        };
+    }
+
+    /**
+     * Returns the subschema of a field (which may be nested, like "shelf/boxes[]color")
+     * within a schema.
+     */
+    private static NormalSubschema subschemaAt(final SchemaInfo schema, final String fieldName) {
+        final FieldPath fieldPath = FieldPath.of(fieldName);
+        Properties properties = schema.getProperties();
+        for (int i = 0; ; i++) {
+            // SchemaDiffer only ever nests deltas inside a NormalSubschema, so that's what these are
+            NormalSubschema subschema = properties == null
+                    ? null
+                    : (NormalSubschema) properties.getProperties().get(fieldPath.getComponent(i));
+            if (subschema != null && fieldPath.isArrayStep(i)) {
+                subschema = (NormalSubschema) subschema.getItemsType();
+            }
+            if (subschema == null) {
+                throw new IllegalArgumentException(
+                        "The field \"" + fieldName + "\" is not in the schema the deltas end with.");
+            }
+            if (i == fieldPath.size() - 1) {
+                return subschema;
+            }
+            properties = subschema.getProperties();
+        }
+    }
+
+    private static IllegalArgumentException notComposable(final Delta firstDelta, final Delta secondDelta) {
+        return new IllegalArgumentException(
+                "Cannot compose \"" + firstDelta + "\" with \"" + secondDelta + "\"; the second set of"
+                        + " deltas must start from the schema the first one ends with.");
+    }
+}
@@ -0,0 +1,239 @@
+package com.mcherm.versionedserialization.schemadiff.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A field name (like "shelf/boxes[]color") which has already been split into its
+ * components, so it can be used to look up a field any number of times without any
+ * string splitting. Looking up a field that exists allocates nothing.
+ *
+ * <p>A component followed by "[]" is an "array step": the value there is an array, and
+ * the rest of the path applies to each of its elements. The methods that find a single
+ * value can't follow an array step, so for paths that have one they never find anything
+ * (the same as {@link Lookup}).
+ *
+ * <p>This is an immutable value object. Code that looks up the same field over and over
+ * (an UpdateRule, for instance) can keep a FieldPath in a constant.
+ */
+public final class FieldPath {
+    /** The most FieldPaths {@link #of} will remember. */
+    private static final int MAX_CACHED = 1024;
+    /** The FieldPaths returned by {@link #of}, until there are too many and it is cleared. */
+    private static final Map<String, FieldPath> cache = new ConcurrentHashMap<>();
+
+    private final String fieldName;
+    private final String[] components;
+    /** arraySteps[i] is true if components[i] is followed by "[]". */
+    private final boolean[] arraySteps;
+    private final boolean hasArraySteps;
+
+    private FieldPath(final String fieldName) {
+        final List<String> componentList = new ArrayList<>();
+        final List<Boolean> arrayStepList = new ArrayList<>();
+        final String[] segments = fieldName.split("\\[]", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty() && i == segments.length - 1 && i > 0) {
+                continue; // the path ends with "[]"
+            }
+            for (String component : segments[i].split("/", -1)) {
+                componentList.add(component);
+                arrayStepList.add(false);
+            }
+            if (i < segments.length - 1) {
+                arrayStepList.set(arrayStepList.size() - 1, true);
+            }
+        }
+        this.fieldName = fieldName;
+        this.components = componentList.toArray(String[]::new);
+        this.arraySteps = new boolean[components.length];
+        for (int i = 0; i < components.length; i++) {
+            arraySteps[i] = arrayStepList.get(i);
+        }
+        this.hasArraySteps = arrayStepList.contains(true);
+    }
+
+    /**
+     * Returns the FieldPath for a field name. Up to 1024 FieldPaths are remembered, so
+     * calling this again with the same name usually doesn't split it again; when that many
+     * have been made they are all forgotten and it starts over. This never locks. Code
+     * that looks up many different fields should keep its own FieldPaths.
+     *
+     * @param fieldName the "/"-separated path to the field, with "[]" after each array
+     * @return the FieldPath
+     */
+    public static FieldPath of(final String fieldName) {
+        final FieldPath cached = cache.get(fieldName);
+        if (cached != null) {
+            return cached;
+        }
+        final FieldPath fieldPath = new FieldPath(fieldName);
+        if (cache.size() >= MAX_CACHED) {
+            cache.clear();
+        }
+        cache.put(fieldName, fieldPath);
+        return fieldPath;
+    }
+
+    /** Returns the field name this was made from. */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /** Returns the number of components. */
+    public int size() {
+        return components.length;
+    }
+
+    /** Returns one of the components. */
+    public String getComponent(final int index) {
+        return components[index];
+    }
+
+    /** Returns the last component: the name of the field within the object that contains it. */
+    public String getLastComponent() {
+        return components[components.length - 1];
+    }
+
+    /** Returns true if the given component is followed by "[]". */
+    public boolean isArrayStep(final int index) {
+        return arraySteps[index];
+    }
+
+    /** Returns true if any component is followed by "[]". */
+    public boolean hasArraySteps() {
+        return hasArraySteps;
+    }
+
+    /**
+     * Returns the value of this field in a document, or null if it doesn't exist (or if
+     * this path has an array step).
+     *
+     * @param document the JSON document to navigate
+     * @return the value at this path, or null
+     */
+    @Nullable
+    public JsonNode find(final JsonNode document) {
+        final ObjectNode parent = findParent(document);
+        return parent == null ? null : parent.get(getLastComponent());
+    }
+
+    /**
+     * Returns the object that contains this field in a document (whether or not the field
+     * itself is there), or null if there isn't one (or if this path has an array step).
+     *
+     * @param document the JSON document to navigate
+     * @return the object which does or would contain the field, or null
+     */
+    @Nullable
+    public ObjectNode findParent(final JsonNode document) {
+        if (hasArraySteps) {
+            return null;
+        }
+        JsonNode currentNode = document;
+        for (int i = 0; i < components.length - 1; i++) {
+            if (!currentNode.isObject()) {
+                return null;
+            }
+            currentNode = currentNode.get(components[i]);
+            if (currentNode == null) {
+                return null;
+            }
+        }
+        return currentNode instanceof ObjectNode objectNode ? objectNode : null;
+    }
+
+    /**
+     * Returns the values of several fields in a document, in the same order as the paths
+     * (with null for each one that doesn't exist, or that has an array step). The paths
+     * are visited in sorted order, so the objects on the way to fields that share a
+     * prefix (like "person/name/first" and "person/name/last") are found only once.
+     *
+     * @param document the JSON document to navigate
+     * @param fieldPaths the fields to find
+     * @return an array holding the value at each path, or null
+     */
+    public static @Nullable JsonNode[] findAll(final JsonNode document, final FieldPath... fieldPaths) {
+        final JsonNode[] values = new JsonNode[fieldPaths.length];
+        if (fieldPaths.length == 0) {
+            return values;
+        }
+        final Integer[] order = new Integer[fieldPaths.length];
+        int maxSize = 0;
+        for (int i = 0; i < fieldPaths.length; i++) {
+            order[i] = i;
+            maxSize = Math.max(maxSize, fieldPaths[i].size());
+        }
+        if (fieldPaths.length > 1) {
+            Arrays.sort(order, (a, b) -> compareComponents(fieldPaths[a], fieldPaths[b]));
+        }
+
+        // parents[k] is the node reached by following the first k components of the
+        // previous path (or null if there was none); it's valid for k <= parentsValid.
+        final JsonNode[] parents = new JsonNode[maxSize];
+        parents[0] = document;
+        int parentsValid = 0;
+        FieldPath previous = null;
+        for (int index : order) {
+            final FieldPath fieldPath = fieldPaths[index];
+            if (fieldPath.hasArraySteps) {
+                continue;
+            }
+            final int depth = fieldPath.components.length - 1;
+            int k = 0;
+            if (previous != null) {
+                final int limit = Math.min(depth, parentsValid);
+                while (k < limit && previous.components[k].equals(fieldPath.components[k])) {
+                    k++;
+                }
+            }
+            JsonNode currentNode = parents[k];
+            for (; k < depth; k++) {
+                currentNode = currentNode != null && currentNode.isObject()
+                        ? currentNode.get(fieldPath.components[k])
+                        : null;
+                parents[k + 1] = currentNode;
+            }
+            values[index] = currentNode instanceof ObjectNode objectNode
+                    ? objectNode.get(fieldPath.getLastComponent())
+                    : null;
+            previous = fieldPath;
+            parentsValid = depth;
+        }
+        return values;
+    }
+
+    /** Orders FieldPaths component by component, so paths with a common prefix are adjacent. */
+    private static int compareComponents(final FieldPath a, final FieldPath b) {
+        final int common = Math.min(a.components.length, b.components.length);
+        for (int i = 0; i < common; i++) {
+            final int result = a.components[i].compareTo(b.components[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(a.components.length, b.components.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FieldPath that && fieldName.equals(that.fieldName);
+    }
+
+    @Override
+    public int hashCode() {
+        return fieldName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return fieldName;
+    }
+}
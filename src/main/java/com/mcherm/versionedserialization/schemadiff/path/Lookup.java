@@ -30,10 +30,36 @@ public class Lookup {
      * @return a ParentAndField if navigation succeeded, or Empty if it could not be resolved
      */
     public static Optional<ParentAndField> getParentAndField(final String fieldName, final JsonNode document) {
-        if (fieldName.contains("[]")) {
+        return getParentAndField(FieldPath.of(fieldName), document);
+    }
+
+    /**
+     * Same as {@link #getParentAndField(String, JsonNode)} except that it is passed a
+     * FieldPath, so the path doesn't need to be split again.
+     *
+     * @param fieldPath the path to the field
+     * @param document the JSON document to navigate
+     * @return a ParentAndField if navigation succeeded, or Empty if it could not be resolved
+     */
+    public static Optional<ParentAndField> getParentAndField(final FieldPath fieldPath, final JsonNode document) {
+        final ObjectNode parentNode = fieldPath.findParent(document);
+        if (parentNode == null) {
             return Optional.empty();
         }
-        final String[] components = fieldName.split("/");
+        final String lastComponent = fieldPath.getLastComponent();
+        return Optional.of(new ParentAndField(parentNode, lastComponent, Optional.ofNullable(parentNode.get(lastComponent))));
+    }
+
+    /**
+     * Same as {@link #getParentAndField(String, JsonNode)} except that it is passed the
+     * path already split into its components, so callers that look up the same path
+     * many times can split it only once.
+     *
+     * @param components the components of the path (none of which may contain "[]")
+     * @param document the JSON document to navigate
+     * @return a ParentAndField if navigation succeeded, or Empty if it could not be resolved
+     */
+    public static Optional<ParentAndField> getParentAndField(final String[] components, final JsonNode document) {
         JsonNode currentNode = document;
         // Navigate to the parent (all components except the last)
         for (int i = 0; i < components.length - 1; i++) {
@@ -66,7 +92,30 @@ public class Lookup {
      * @return the JsonNode at that path, or Empty if it does not exist
      */
     public static Optional<JsonNode> getField(final String fieldName, final JsonNode document) {
-        return getParentAndField(fieldName, document)
+        return getField(FieldPath.of(fieldName), document);
+    }
+
+    /**
+     * Same as {@link #getField(String, JsonNode)} except that it is passed a FieldPath.
+     *
+     * @param fieldPath the path to the field
+     * @param document the JSON document to navigate
+     * @return the JsonNode at that path, or Empty if it does not exist
+     */
+    public static Optional<JsonNode> getField(final FieldPath fieldPath, final JsonNode document) {
+        return Optional.ofNullable(fieldPath.find(document));
+    }
+
+    /**
+     * Same as {@link #getField(String, JsonNode)} except that it is passed the path
+     * already split into its components.
+     *
+     * @param components the components of the path (none of which may contain "[]")
+     * @param document the JSON document to navigate
+     * @return the JsonNode at that path, or Empty if it does not exist
+     */
+    public static Optional<JsonNode> getField(final String[] components, final JsonNode document) {
+        return getParentAndField(components, document)
                 .flatMap(pf -> pf.targetNode());
     }
 }
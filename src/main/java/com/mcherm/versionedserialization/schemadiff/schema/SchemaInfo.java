@@ -1,5 +1,9 @@
 package com.mcherm.versionedserialization.schemadiff.schema;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -18,6 +22,8 @@ public class SchemaInfo {
     private final String schemaVersion;
     private final Map<String,Subschema> defs;
     private final Properties properties;
+    /** Worked out when first needed. */
+    private String fingerprint;
 
     /** Constructor */
     public SchemaInfo(final String schemaVersion, final Map<String,Subschema> defs, final Properties properties) {
@@ -38,6 +44,25 @@ public class SchemaInfo {
         return properties;
     }
 
+    /**
+     * Returns a short string (a SHA-256 hash of {@link #toString()}) which is the same for
+     * SchemaInfos built from the same schema, and makes it cheap to tell most different
+     * schemas apart. It is only a hint, though: toString() is a readable form rather than
+     * a canonical one (it doesn't escape names or values, for instance), so two different
+     * schemas can have the same fingerprint. Use {@link #equals} to be sure.
+     */
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                fingerprint = HexFormat.of().formatHex(digest.digest(toString().getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException err) {
+                throw new RuntimeException("SHA-256 is not available", err);
+            }
+        }
+        return fingerprint;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof SchemaInfo that)) return false;
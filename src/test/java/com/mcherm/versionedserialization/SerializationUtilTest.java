@@ -1,8 +1,20 @@
 package com.mcherm.versionedserialization;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.migration.UpdateContext;
+import com.mcherm.versionedserialization.migration.UpdateRules;
+import com.mcherm.versionedserialization.objects.RecordV1;
+import com.mcherm.versionedserialization.objects.RecordV2a;
+import com.mcherm.versionedserialization.objects.RecordV2b;
+import com.mcherm.versionedserialization.schemadiff.SchemaParser;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /** Tests of JsonUtil that aren't covered elsewhere. */
@@ -15,4 +27,43 @@ public class SerializationUtilTest {
         assertEquals("abc", rootNode.get("s").asText());
         assertEquals(37, rootNode.get("i").asInt());
     }
+
+    @Test
+    public void testDeserializeFromOlderVersion() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = SchemaParser.parse(SerializationUtil.generateSchema(RecordV1.class));
+        final String source = SerializationUtil.serialize(new RecordV1("Alice", 93, List.of("x", "y")));
+        final UpdateRules noRules = new UpdateRules(Map.of());
+        assertEquals(
+                new RecordV2b("Alice", 93),
+                SerializationUtil.deserialize(source, RecordV2b.class, sourceSchema, noRules));
+        assertEquals(
+                new RecordV2b("Alice", 93),
+                SerializationUtil.deserialize(source, RecordV2b.class, sourceSchema, noRules));
+    }
+
+    @Test
+    public void testDeserializeFromOlderVersionWithRule() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = SchemaParser.parse(SerializationUtil.generateSchema(RecordV1.class));
+        final String source = SerializationUtil.serialize(new RecordV1("Alice", 93, List.of("x", "y")));
+        final UpdateRules rules = new UpdateRules(Map.of(
+                "grade", (UpdateContext ctx, String field) ->
+                        TextNode.valueOf(ctx.getSourceValue("score").orElseThrow().asInt() >= 90 ? "A" : "B")));
+        assertEquals(
+                new RecordV2a("Alice", 93, List.of("x", "y"), "A"),
+                SerializationUtil.deserialize(source, RecordV2a.class, sourceSchema, rules));
+    }
+
+    @Test
+    public void testDeserializeWithNewRulesEachCall() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = SchemaParser.parse(SerializationUtil.generateSchema(RecordV1.class));
+        for (int i = 0; i < 50; i++) {
+            final String grade = "G" + i;
+            final UpdateRules rules = new UpdateRules(Map.of(
+                    "grade", (UpdateContext ctx, String field) -> TextNode.valueOf(grade)));
+            final String source = SerializationUtil.serialize(new RecordV1("Alice", i, List.of()));
+            assertEquals(
+                    new RecordV2a("Alice", i, List.of(), grade),
+                    SerializationUtil.deserialize(source, RecordV2a.class, sourceSchema, rules));
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package com.mcherm.versionedserialization;
+
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import com.mcherm.versionedserialization.schemadiff.SchemaParser;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+
+/** Schema fixtures shared by the tests. */
+public final class TestSchemas {
+    private TestSchemas() {}
+
+    /** Returns the parsed schema that SerializationUtil generates for a class. */
+    public static SchemaInfo schemaOf(final Class<?> clazz) throws UnsupportedSchemaFeature {
+        return SchemaParser.parse(SerializationUtil.generateSchema(clazz));
+    }
+}
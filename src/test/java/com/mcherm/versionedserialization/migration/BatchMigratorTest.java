@@ -0,0 +1,210 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests of BatchMigrator. */
+public class BatchMigratorTest {
+
+    private static final int DOCUMENT_COUNT = 2000;
+
+    @Test
+    public void testPreserveOrder() throws UnsupportedSchemaFeature {
+        try (BatchMigrator batchMigrator = new BatchMigrator(4, true)) {
+            assertEquals(expectedDocuments(), batchMigrator.migrateAll(createPlan(), sourceDocuments()));
+        }
+    }
+
+    @Test
+    public void testAnyOrder() throws UnsupportedSchemaFeature {
+        final List<JsonNode> results;
+        try (BatchMigrator batchMigrator = new BatchMigrator(4, false)) {
+            results = new ArrayList<>(batchMigrator.migrateAll(createPlan(), sourceDocuments().stream()));
+        }
+        results.sort(Comparator.comparingInt(node -> node.get("i").asInt()));
+        assertEquals(expectedDocuments(), results);
+    }
+
+    @Test
+    public void testConsumer() throws UnsupportedSchemaFeature {
+        final List<JsonNode> results = Collections.synchronizedList(new ArrayList<>());
+        try (BatchMigrator batchMigrator = new BatchMigrator(3, true)) {
+            batchMigrator.migrateAll(createPlan(), sourceDocuments().stream(), results::add);
+        }
+        assertEquals(expectedDocuments(), results);
+    }
+
+    @Test
+    public void testReadsAheadOnlyAsFarAsTheWindow() throws UnsupportedSchemaFeature {
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final List<JsonNode> results = new ArrayList<>();
+        try (BatchMigrator batchMigrator = new BatchMigrator(4, true)) {
+            batchMigrator.migrateAll(
+                    createPlan(),
+                    sourceDocuments().stream().peek(document -> read.incrementAndGet()),
+                    result -> {
+                        results.add(result);
+                        maxAhead.accumulateAndGet(read.get() - results.size(), Math::max);
+                    });
+        }
+        assertEquals(expectedDocuments(), results);
+        assertTrue(maxAhead.get() <= 4 * 2, "read ahead by " + maxAhead.get());
+    }
+
+    @Test
+    public void testSuppliedExecutorIsReused() throws UnsupportedSchemaFeature {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            try (BatchMigrator batchMigrator = new BatchMigrator(new Migrator(), executor, 2, false)) {
+                for (int i = 0; i < 2; i++) {
+                    final List<JsonNode> results = new ArrayList<>(batchMigrator.migrateAll(createPlan(), sourceDocuments()));
+                    results.sort(Comparator.comparingInt(node -> node.get("i").asInt()));
+                    assertEquals(expectedDocuments(), results);
+                }
+            }
+            // closing the BatchMigrator leaves an executor it didn't create alone
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureIsThrown() throws UnsupportedSchemaFeature {
+        final List<JsonNode> documents = new ArrayList<>(sourceDocuments());
+        documents.set(DOCUMENT_COUNT / 2, TextNode.valueOf("not an object"));
+        try (BatchMigrator batchMigrator = new BatchMigrator(4, true)) {
+            assertThrows(RuntimeException.class, () -> batchMigrator.migrateAll(createPlan(), documents));
+        }
+    }
+
+    @Test
+    public void testBatchRuleCalledOncePerGroup() throws UnsupportedSchemaFeature {
+        final AtomicInteger callCount = new AtomicInteger();
+        try (BatchMigrator batchMigrator = new BatchMigrator(4, true)) {
+            assertEquals(expectedDocuments(), batchMigrator.migrateAll(createBatchPlan(callCount), sourceDocuments()));
+        }
+        assertEquals((DOCUMENT_COUNT + BatchMigrator.BATCH_SIZE - 1) / BatchMigrator.BATCH_SIZE, callCount.get());
+    }
+
+    @Test
+    public void testBatchGroupsReadAheadOnlyAsFarAsTheWindow() throws UnsupportedSchemaFeature {
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final List<JsonNode> results = new ArrayList<>();
+        try (BatchMigrator batchMigrator = new BatchMigrator(2, true)) {
+            batchMigrator.migrateAll(
+                    createBatchPlan(new AtomicInteger()),
+                    IntStream.range(0, 20_000).mapToObj(BatchMigratorTest::sourceDocument)
+                            .peek(document -> read.incrementAndGet()),
+                    result -> {
+                        results.add(result);
+                        maxAhead.accumulateAndGet(read.get() - results.size(), Math::max);
+                    });
+        }
+        assertEquals(20_000, results.size());
+        assertTrue(maxAhead.get() <= 2 * 2 * BatchMigrator.BATCH_SIZE, "read ahead by " + maxAhead.get());
+    }
+
+    @Test
+    public void testParallelArraysRunInTheBatchMigratorsPool() throws UnsupportedSchemaFeature {
+        record ItemV1(String name) {}
+        record ItemV2(String name, String tag) {}
+        record BagV1(List<ItemV1> items) {}
+        record BagV2(List<ItemV2> items) {}
+        final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(BagV1.class),
+                schemaOf(BagV2.class),
+                new UpdateRules(Map.of("items[]tag", (UpdateContext ctx, String field) -> {
+                    pools.add(ForkJoinTask.getPool());
+                    return TextNode.valueOf("t");
+                })));
+        final List<JsonNode> documents = IntStream.range(0, 20)
+                .mapToObj(i -> SerializationUtil.serializeAsNode(new BagV1(
+                        IntStream.range(0, 100).mapToObj(j -> new ItemV1("item" + j)).toList())))
+                .toList();
+        try (BatchMigrator batchMigrator = new BatchMigrator(new Migrator(10), 2, true)) {
+            assertEquals(20, batchMigrator.migrateAll(plan, documents).size());
+        }
+        assertEquals(1, pools.size());
+        assertNotSame(ForkJoinPool.commonPool(), pools.iterator().next());
+        assertTrue(pools.iterator().next().isShutdown());
+    }
+
+    private MigrationPlan createPlan() throws UnsupportedSchemaFeature {
+        return new MigrationPlan(
+                schemaOf(SimpleV1.class),
+                schemaOf(SimpleV2a.class),
+                new UpdateRules(Map.of(
+                        "extra", (UpdateContext ctx, String field) ->
+                                TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText() + "!")
+                )));
+    }
+
+    /** Returns a plan whose only rule is a BatchUpdateRule, which counts its calls. */
+    private MigrationPlan createBatchPlan(final AtomicInteger callCount) throws UnsupportedSchemaFeature {
+        final BatchUpdateRule batchRule = (contexts, containingObjects, field) -> {
+            callCount.incrementAndGet();
+            return containingObjects.stream()
+                    .map(object -> (JsonNode) TextNode.valueOf(object.get("s").asText() + "!"))
+                    .toList();
+        };
+        return new MigrationPlan(
+                schemaOf(SimpleV1.class),
+                schemaOf(SimpleV2a.class),
+                new UpdateRules(Map.of("extra", batchRule)));
+    }
+
+    private List<JsonNode> sourceDocuments() {
+        return IntStream.range(0, DOCUMENT_COUNT)
+                .mapToObj(BatchMigratorTest::sourceDocument)
+                .toList();
+    }
+
+    private static JsonNode sourceDocument(final int i) {
+        final SimpleV1 simpleV1 = new SimpleV1();
+        simpleV1.s = "doc" + i;
+        simpleV1.i = i;
+        return SerializationUtil.serializeAsNode(simpleV1);
+    }
+
+    private List<JsonNode> expectedDocuments() {
+        return IntStream.range(0, DOCUMENT_COUNT)
+                .mapToObj(i -> {
+                    final SimpleV2a simpleV2a = new SimpleV2a();
+                    simpleV2a.s = "doc" + i;
+                    simpleV2a.i = i;
+                    simpleV2a.extra = "doc" + i + "!";
+                    return SerializationUtil.serializeAsNode(simpleV2a);
+                })
+                .toList();
+    }
+}
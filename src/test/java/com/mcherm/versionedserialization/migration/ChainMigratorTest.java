@@ -0,0 +1,86 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.objects.SimpleV2b;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests of ChainMigrator. */
+public class ChainMigratorTest {
+
+    record ShoeV1(String name, int size) {}
+    record ShoeV2(String name, int size, String label) {}
+    record ShoeV3(String label) {}
+
+    @Test
+    public void testLaterHopSeesEarlierHopsResult() throws UnsupportedSchemaFeature {
+        final ChainMigrator chainMigrator = new ChainMigrator(
+                List.of(schemaOf(ShoeV1.class), schemaOf(ShoeV2.class), schemaOf(ShoeV3.class)),
+                List.of(
+                        new UpdateRules(Map.of(
+                                "label", (UpdateContext ctx, String field) -> TextNode.valueOf(
+                                        ctx.getSourceValue("name").orElseThrow().asText()
+                                                + " size " + ctx.getSourceValue("size").orElseThrow().asText())
+                        )),
+                        new UpdateRules(Map.of())
+                ));
+        final JsonNode source = SerializationUtil.serializeAsNode(new ShoeV1("Vans", 5));
+        assertEquals(
+                SerializationUtil.serializeAsNode(new ShoeV3("Vans size 5")),
+                chainMigrator.migrate(source, 0));
+        assertEquals(SerializationUtil.serializeAsNode(new ShoeV1("Vans", 5)), source); // source is unchanged
+    }
+
+    @Test
+    public void testStartFromIntermediateVersion() throws UnsupportedSchemaFeature {
+        final ChainMigrator chainMigrator = new ChainMigrator(
+                List.of(schemaOf(SimpleV1.class), schemaOf(SimpleV2a.class), schemaOf(SimpleV2b.class)),
+                List.of(new UpdateRules(Map.of()), new UpdateRules(Map.of())));
+        final SimpleV2a source = new SimpleV2a();
+        source.s = "abc";
+        source.i = 23;
+        source.extra = "more";
+        final SimpleV2b expected = new SimpleV2b();
+        expected.i = 23;
+        assertEquals(
+                SerializationUtil.serializeAsNode(expected),
+                chainMigrator.migrateInPlace(SerializationUtil.serializeAsNode(source), 1));
+    }
+
+    @Test
+    public void testComposedHops() throws UnsupportedSchemaFeature {
+        record InnerV1(String a, int b) {}
+        record InnerV2(String a) {}
+        record InnerV3(String a, boolean c) {}
+        record V1(String s, List<InnerV1> inners) {}
+        record V2(List<InnerV2> inners, String temporary) {}
+        record V3(List<InnerV3> inners, int count) {}
+        final ChainMigrator chainMigrator = new ChainMigrator(
+                List.of(schemaOf(V1.class), schemaOf(V2.class), schemaOf(V3.class)),
+                List.of(new UpdateRules(Map.of()), new UpdateRules(Map.of())));
+        final JsonNode source = SerializationUtil.serializeAsNode(
+                new V1("abc", List.of(new InnerV1("x", 1), new InnerV1("y", 2))));
+        assertEquals(
+                SerializationUtil.serializeAsNode(
+                        new V3(List.of(new InnerV3("x", false), new InnerV3("y", false)), 0)),
+                chainMigrator.migrate(source, 0));
+    }
+
+    @Test
+    public void testWrongNumberOfRules() throws UnsupportedSchemaFeature {
+        final List<SchemaInfo> versions = List.of(schemaOf(SimpleV1.class), schemaOf(SimpleV2a.class));
+        assertThrows(IllegalArgumentException.class, () -> new ChainMigrator(versions, List.of()));
+    }
+}
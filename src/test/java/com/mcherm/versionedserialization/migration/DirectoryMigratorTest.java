@@ -0,0 +1,84 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests of DirectoryMigrator. */
+public class DirectoryMigratorTest {
+
+    @Test
+    public void testMigrateDirectoryTree(@TempDir final Path tempDir) throws IOException, UnsupportedSchemaFeature {
+        final Path sourceDir = tempDir.resolve("source");
+        final Path targetDir = tempDir.resolve("target");
+        for (int i = 0; i < 50; i++) {
+            final Path file = sourceDir.resolve("batch" + (i % 3)).resolve("doc" + i + ".json");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, SerializationUtil.serialize(simpleV1(i)));
+        }
+
+        final DirectoryMigrator.Report report = new DirectoryMigrator(4).migrate(plan(), sourceDir, targetDir);
+
+        assertEquals(50, report.filesMigrated());
+        assertEquals(Map.of(), report.failures());
+        assertTrue(report.bytesRead() > 0 && report.bytesWritten() > report.bytesRead());
+        assertTrue(report.filesPerSecond() > 0);
+        for (int i = 0; i < 50; i++) {
+            final Path file = targetDir.resolve("batch" + (i % 3)).resolve("doc" + i + ".json");
+            assertEquals(
+                    SerializationUtil.serializeAsNode(simpleV2a(i)),
+                    SerializationUtil.deserializeAsNode(Files.readString(file)));
+        }
+    }
+
+    @Test
+    public void testMigrateInPlaceWithFailure(@TempDir final Path dir) throws IOException, UnsupportedSchemaFeature {
+        Files.writeString(dir.resolve("good.json"), SerializationUtil.serialize(simpleV1(7)));
+        Files.writeString(dir.resolve("bad.json"), "{ not json");
+
+        final DirectoryMigrator.Report report = new DirectoryMigrator(2).migrate(plan(), dir, dir);
+
+        assertEquals(1, report.filesMigrated());
+        assertEquals(1, report.failures().size());
+        assertTrue(report.failures().containsKey(dir.resolve("bad.json")));
+        assertEquals("{ not json", Files.readString(dir.resolve("bad.json")));
+        assertEquals(
+                SerializationUtil.serializeAsNode(simpleV2a(7)),
+                SerializationUtil.deserializeAsNode(Files.readString(dir.resolve("good.json"))));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count()); // no temporary files left behind
+        }
+    }
+
+    private static MigrationPlan plan() throws UnsupportedSchemaFeature {
+        return new MigrationPlan(schemaOf(SimpleV1.class), schemaOf(SimpleV2a.class), new UpdateRules(Map.of()));
+    }
+
+    private static SimpleV1 simpleV1(final int i) {
+        final SimpleV1 simpleV1 = new SimpleV1();
+        simpleV1.s = "doc" + i;
+        simpleV1.i = i;
+        return simpleV1;
+    }
+
+    private static SimpleV2a simpleV2a(final int i) {
+        final SimpleV2a simpleV2a = new SimpleV2a();
+        simpleV2a.s = "doc" + i;
+        simpleV2a.i = i;
+        simpleV2a.extra = "";
+        return simpleV2a;
+    }
+}
@@ -0,0 +1,93 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Tests of LazyMigratedDocument. */
+public class LazyMigratedDocumentTest {
+
+    record InnerV1(String a, int b) {}
+    record InnerV2(String a, String c) {}
+    record DocV1(String name, int size, InnerV1 inner, List<InnerV1> inners) {}
+    record DocV2(String name, String label, InnerV2 inner, List<InnerV2> inners) {}
+
+    @Test
+    public void testRulesRunOnlyWhenTheirFieldIsRead() throws UnsupportedSchemaFeature {
+        final AtomicInteger labelCalls = new AtomicInteger();
+        final LazyMigratedDocument lazy = new LazyMigratedDocument(planWithCounter(labelCalls), sourceDocument());
+        assertEquals(Optional.of(TextNode.valueOf("Vans")), lazy.get("name"));
+        assertEquals(Optional.empty(), lazy.get("size"));
+        assertEquals(Optional.of(TextNode.valueOf("x")), lazy.get("inner/a"));
+        assertEquals(0, labelCalls.get());
+        assertEquals(Optional.of(TextNode.valueOf("Vans size 5")), lazy.get("label"));
+        assertEquals(Optional.of(TextNode.valueOf("Vans size 5")), lazy.get("label"));
+        assertEquals(1, labelCalls.get());
+    }
+
+    @Test
+    public void testReadingInsideAndAboveChangedFields() throws UnsupportedSchemaFeature {
+        final LazyMigratedDocument lazy = new LazyMigratedDocument(
+                planWithCounter(new AtomicInteger()), sourceDocument());
+        assertEquals(Optional.of(TextNode.valueOf("new")), lazy.get("inner/c"));
+        assertEquals(Optional.empty(), lazy.get("inner/b"));
+        assertEquals(Optional.empty(), lazy.get("inner/a/nothing"));
+        assertEquals(
+                Optional.of(SerializationUtil.serializeAsNode(new InnerV2("x", "new"))),
+                lazy.get("inner"));
+        assertEquals(
+                Optional.of(SerializationUtil.serializeAsNode(
+                        List.of(new InnerV2("y", "new"), new InnerV2("z", "new")))),
+                lazy.get("inners"));
+    }
+
+    @Test
+    public void testMaterializeMatchesMigrator() throws UnsupportedSchemaFeature {
+        final MigrationPlan plan = planWithCounter(new AtomicInteger());
+        final JsonNode source = sourceDocument();
+        final LazyMigratedDocument lazy = new LazyMigratedDocument(plan, source);
+        lazy.get("inner/c");
+        final JsonNode materialized = lazy.materialize();
+        assertEquals(new Migrator().migrate(plan, source), materialized);
+        assertEquals(
+                SerializationUtil.serializeAsNode(new DocV2(
+                        "Vans", "Vans size 5", new InnerV2("x", "new"),
+                        List.of(new InnerV2("y", "new"), new InnerV2("z", "new")))),
+                materialized);
+        assertEquals(Optional.of(TextNode.valueOf("Vans")), lazy.get("name"));
+        assertEquals(sourceDocument(), source); // source is unchanged
+    }
+
+    /** A plan from DocV1 to DocV2 where the "label" rule counts how often it is called. */
+    private static MigrationPlan planWithCounter(final AtomicInteger labelCalls) throws UnsupportedSchemaFeature {
+        final UpdateRule cRule = (UpdateContext ctx, String field) -> TextNode.valueOf("new");
+        return new MigrationPlan(
+                schemaOf(DocV1.class),
+                schemaOf(DocV2.class),
+                new UpdateRules(Map.of(
+                        "label", (UpdateContext ctx, String field) -> {
+                            labelCalls.incrementAndGet();
+                            return TextNode.valueOf(ctx.getSourceValue("name").orElseThrow().asText()
+                                    + " size " + ctx.getSourceValue("size").orElseThrow().asText());
+                        },
+                        "inner/c", cRule,
+                        "inners[]c", cRule
+                )));
+    }
+
+    private static JsonNode sourceDocument() {
+        return SerializationUtil.serializeAsNode(new DocV1(
+                "Vans", 5, new InnerV1("x", 1), List.of(new InnerV1("y", 2), new InnerV1("z", 3))));
+    }
+}
@@ -0,0 +1,140 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.JsonPropV1;
+import com.mcherm.versionedserialization.objects.JsonPropV2b;
+import com.mcherm.versionedserialization.objects.RecordV1;
+import com.mcherm.versionedserialization.objects.RecordV2a;
+import com.mcherm.versionedserialization.objects.RecordV2b;
+import com.mcherm.versionedserialization.objects.contents.Circle;
+import com.mcherm.versionedserialization.objects.contents.Rectangle;
+import com.mcherm.versionedserialization.objects.contents.Shape;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Tests of MigrationModule. */
+public class MigrationModuleTest {
+
+    @Test
+    public void testReadDroppedProperty() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MigrationModule()
+                .addSourceVersion(JsonPropV2b.class, schemaOf(JsonPropV1.class), new UpdateRules(Map.of())));
+        final JsonPropV1 source = new JsonPropV1();
+        source.firstName = "Alice";
+        source.lastName = "Smith";
+        source.age = 30;
+        final JsonPropV2b result = objectMapper.readValue(SerializationUtil.serialize(source), JsonPropV2b.class);
+        assertEquals("Alice", result.firstName);
+        assertEquals(30, result.age);
+    }
+
+    @Test
+    public void testReadNestedValues() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MigrationModule()
+                .addSourceVersion(RecordV2b.class, schemaOf(RecordV1.class), new UpdateRules(Map.of())));
+        final String source = SerializationUtil.serialize(List.of(
+                new RecordV1("Alice", 93, List.of("x")),
+                new RecordV1("Bob", 71, List.of())));
+        assertEquals(
+                List.of(new RecordV2b("Alice", 93), new RecordV2b("Bob", 71)),
+                objectMapper.readValue(source, new TypeReference<List<RecordV2b>>() {}));
+    }
+
+    @Test
+    public void testReadWithRule() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MigrationModule()
+                .addSourceVersion(RecordV2a.class, schemaOf(RecordV1.class), new UpdateRules(Map.of(
+                        "grade", (UpdateContext ctx, String field) -> TextNode.valueOf(
+                                ctx.getSourceValue("score").orElseThrow().asInt() >= 90 ? "A" : "B")))));
+        final String source = SerializationUtil.serialize(new RecordV1("Alice", 93, List.of("x", "y")));
+        assertEquals(
+                new RecordV2a("Alice", 93, List.of("x", "y"), "A"),
+                objectMapper.readValue(source, RecordV2a.class));
+    }
+
+    @Test
+    public void testTwoModulesOnOneMapper() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new MigrationModule()
+                        .addSourceVersion(JsonPropV2b.class, schemaOf(JsonPropV1.class), new UpdateRules(Map.of())))
+                .registerModule(new MigrationModule()
+                        .addSourceVersion(RecordV2b.class, schemaOf(RecordV1.class), new UpdateRules(Map.of())));
+        assertEquals(2, objectMapper.getRegisteredModuleIds().size());
+        final JsonPropV1 source = new JsonPropV1();
+        source.firstName = "Alice";
+        source.lastName = "Smith";
+        source.age = 30;
+        assertEquals("Alice", objectMapper.readValue(SerializationUtil.serialize(source), JsonPropV2b.class).firstName);
+        assertEquals(
+                new RecordV2b("Bob", 71),
+                objectMapper.readValue(SerializationUtil.serialize(new RecordV1("Bob", 71, List.of("x"))), RecordV2b.class));
+    }
+
+    /** An older version of Circle, which had a label. */
+    public static class CircleV1 {
+        public String color;
+        public double radius;
+        public String label;
+    }
+
+    @Test
+    public void testReadPolymorphicSubtype() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MigrationModule()
+                .addSourceVersion(Circle.class, new MigrationPlan(
+                        schemaOf(CircleV1.class), schemaOf(CircleV2.class), new UpdateRules(Map.of()))));
+        final String source = "[{\"type\":\"circle\",\"color\":\"red\",\"radius\":2.0,\"label\":\"a\"},"
+                + "{\"color\":\"blue\",\"label\":\"b\",\"radius\":3.0,\"type\":\"circle\"},"
+                + "{\"type\":\"circle\"},"
+                + "{\"type\":\"rectangle\",\"color\":\"green\",\"width\":1.0,\"height\":4.0}]";
+        final List<Shape> shapes = objectMapper.readValue(source, new TypeReference<List<Shape>>() {});
+        assertEquals(4, shapes.size());
+        final Circle first = (Circle) shapes.get(0);
+        assertEquals("red", first.color);
+        assertEquals(2.0, first.radius);
+        final Circle second = (Circle) shapes.get(1);
+        assertEquals("blue", second.color);
+        assertEquals(3.0, second.radius);
+        final Circle third = (Circle) shapes.get(2);
+        assertNull(third.color);
+        final Rectangle fourth = (Rectangle) shapes.get(3);
+        assertEquals("green", fourth.color);
+        assertEquals(4.0, fourth.height);
+    }
+
+    /** The fields Circle is serialized with (the schema generator can't do Circle itself). */
+    public static class CircleV2 {
+        public String color;
+        public double radius;
+    }
+
+    /** An older version of Circle, which had its radius as a String. */
+    public static class CircleV0 {
+        public String color;
+        public String radius;
+    }
+
+    @Test
+    public void testReadPolymorphicSubtypeWithRule() throws UnsupportedSchemaFeature, JsonProcessingException {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MigrationModule()
+                .addSourceVersion(Circle.class, new MigrationPlan(
+                        schemaOf(CircleV0.class), schemaOf(CircleV2.class), new UpdateRules(Map.of(
+                                "radius", (UpdateContext ctx, String field) -> DoubleNode.valueOf(
+                                        Double.parseDouble(ctx.getSourceValue("radius").orElseThrow().asText())))))));
+        final Shape shape = objectMapper.readValue(
+                "{\"type\":\"circle\",\"color\":\"red\",\"radius\":\"2.0\"}", Shape.class);
+        assertEquals("red", shape.color);
+        assertEquals(2.0, ((Circle) shape).radius);
+    }
+}
@@ -0,0 +1,263 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests of MigrationProcessor. */
+public class MigrationProcessorTest {
+
+    private static final int DOCUMENT_COUNT = 500;
+
+    @Test
+    public void testBlockedSubscriberStallsUpstream() throws Exception {
+        final AtomicInteger migrated = new AtomicInteger();
+        final AtomicInteger requested = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final MigrationProcessor processor = new MigrationProcessor(createPlan(migrated), 4, 8);
+        final SlowSubscriber subscriber = new SlowSubscriber(migrated, gate);
+        processor.subscribe(subscriber);
+        // the source can hold every document, so only the processor's demand holds them back
+        try (SubmissionPublisher<JsonNode> source = new SubmissionPublisher<>(ForkJoinPool.commonPool(), 512)) {
+            source.subscribe(new DemandCountingSubscriber(processor, requested));
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                source.submit(sourceDocument(i));
+            }
+
+            // while the subscriber is blocked, the workers and the buffer fill up and demand stops
+            waitUntilStalled(migrated, requested);
+            assertTrue(requested.get() <= 4 + 8 + 1, "requested " + requested.get());
+            assertTrue(migrated.get() <= 4 + 8 + 1, "migrated " + migrated.get());
+            assertTrue(subscriber.received.size() <= 1, "received " + subscriber.received.size());
+
+            gate.countDown();
+        }
+        subscriber.done.get(30, TimeUnit.SECONDS);
+
+        final List<JsonNode> results = new ArrayList<>(subscriber.received);
+        results.sort(Comparator.comparingInt(node -> node.get("i").asInt()));
+        final List<JsonNode> expected = new ArrayList<>();
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            expected.add(expectedDocument(i));
+        }
+        assertEquals(expected, results);
+        // migration never got further ahead of the subscriber than the workers and buffer allow
+        assertTrue(subscriber.maxAhead.get() <= 4 + 8 + 1, "ran ahead by " + subscriber.maxAhead.get());
+    }
+
+    @Test
+    public void testFailureIsPassedOn() throws Exception {
+        final MigrationProcessor processor = new MigrationProcessor(createPlan(new AtomicInteger()), 2, 4);
+        final SlowSubscriber subscriber = new SlowSubscriber(new AtomicInteger(), new CountDownLatch(0));
+        processor.subscribe(subscriber);
+        try (SubmissionPublisher<JsonNode> source = new SubmissionPublisher<>()) {
+            source.subscribe(processor);
+            source.submit(sourceDocument(1));
+            source.submit(TextNode.valueOf("not an object"));
+        }
+        final Throwable error = subscriber.done.handle((x, err) -> err).get(30, TimeUnit.SECONDS);
+        assertInstanceOf(RuntimeException.class, error);
+    }
+
+    @Test
+    public void testCancellingStopsUpstream() throws Exception {
+        final AtomicInteger migrated = new AtomicInteger();
+        final AtomicInteger requested = new AtomicInteger();
+        final MigrationProcessor processor = new MigrationProcessor(createPlan(migrated), 2, 4);
+        final CompletableFuture<JsonNode> first = new CompletableFuture<>();
+        processor.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(final JsonNode item) {
+                subscription.cancel();
+                first.complete(item);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                first.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        try (SubmissionPublisher<JsonNode> source = new SubmissionPublisher<>(ForkJoinPool.commonPool(), 512)) {
+            source.subscribe(new DemandCountingSubscriber(processor, requested));
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                source.submit(sourceDocument(i));
+            }
+            first.get(30, TimeUnit.SECONDS);
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!processor.isClosed() || source.getNumberOfSubscribers() > 0) {
+                assertTrue(System.nanoTime() < deadline, "the processor never stopped");
+                Thread.sleep(10);
+            }
+            waitUntilStalled(migrated, requested);
+            assertTrue(requested.get() < DOCUMENT_COUNT, "requested " + requested.get());
+            assertTrue(migrated.get() < DOCUMENT_COUNT, "migrated " + migrated.get());
+        }
+    }
+
+    /** Waits until neither counter has changed for a while, failing if that takes too long. */
+    private static void waitUntilStalled(final AtomicInteger migrated, final AtomicInteger requested)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        int lastMigrated = -1;
+        int lastRequested = -1;
+        while (migrated.get() != lastMigrated || requested.get() != lastRequested) {
+            assertTrue(System.nanoTime() < deadline, "migration never stalled");
+            lastMigrated = migrated.get();
+            lastRequested = requested.get();
+            Thread.sleep(200);
+        }
+    }
+
+    /**
+     * A subscriber that takes one result at a time, and blocks on the first one until
+     * the gate is opened.
+     */
+    private static class SlowSubscriber implements Flow.Subscriber<JsonNode> {
+        final List<JsonNode> received = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        private final AtomicInteger migrated;
+        private final CountDownLatch gate;
+        private Flow.Subscription subscription;
+
+        SlowSubscriber(final AtomicInteger migrated, final CountDownLatch gate) {
+            this.migrated = migrated;
+            this.gate = gate;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final JsonNode item) {
+            received.add(item);
+            maxAhead.accumulateAndGet(migrated.get() - received.size(), Math::max);
+            try {
+                gate.await();
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                subscription.cancel();
+                done.completeExceptionally(err);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    /** Passes everything on to another subscriber, counting the items it requests. */
+    private static class DemandCountingSubscriber implements Flow.Subscriber<JsonNode> {
+        private final Flow.Subscriber<JsonNode> downstream;
+        private final AtomicInteger requested;
+
+        DemandCountingSubscriber(final Flow.Subscriber<JsonNode> downstream, final AtomicInteger requested) {
+            this.downstream = downstream;
+            this.requested = requested;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                    requested.addAndGet((int) n);
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(final JsonNode item) {
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+    }
+
+    private static MigrationPlan createPlan(final AtomicInteger migrated) throws UnsupportedSchemaFeature {
+        return new MigrationPlan(
+                schemaOf(SimpleV1.class),
+                schemaOf(SimpleV2a.class),
+                new UpdateRules(Map.of(
+                        "extra", (UpdateContext ctx, String field) -> {
+                            migrated.incrementAndGet();
+                            return TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText() + "!");
+                        }
+                )));
+    }
+
+    private static JsonNode sourceDocument(final int i) {
+        final SimpleV1 simpleV1 = new SimpleV1();
+        simpleV1.s = "doc" + i;
+        simpleV1.i = i;
+        return SerializationUtil.serializeAsNode(simpleV1);
+    }
+
+    private static JsonNode expectedDocument(final int i) {
+        final SimpleV2a simpleV2a = new SimpleV2a();
+        simpleV2a.s = "doc" + i;
+        simpleV2a.i = i;
+        simpleV2a.extra = "doc" + i + "!";
+        return SerializationUtil.serializeAsNode(simpleV2a);
+    }
+}
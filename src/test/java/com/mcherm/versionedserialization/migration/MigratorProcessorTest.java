@@ -0,0 +1,204 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.JsonPropV1;
+import com.mcherm.versionedserialization.objects.RecordV1;
+import com.mcherm.versionedserialization.objects.RecordV2b;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the migrators generated by MigratorProcessor for the classes below, which
+ * should give the same results as a StreamingMigrator using a MigrationPlan worked out
+ * at run time.
+ */
+public class MigratorProcessorTest {
+
+    @MigratesFrom(SimpleV1.class)
+    public static class SimpleCurrent {
+        public String s;
+        public int i;
+        public String extra;
+    }
+
+    @MigratesFrom({RecordV1.class, RecordV2b.class})
+    public record RecordCurrent(String name, int score, List<String> tags, String grade) {}
+
+    @MigratesFrom(JsonPropV1.class)
+    public static class JsonPropCurrent {
+        @JsonProperty("first_name")
+        public String firstName;
+        public int age;
+    }
+
+    public record ItemV1(String color, int weight) {}
+    public record ItemV2(String color, String size) {}
+    public record BoxV1(String label, List<ItemV1> items) {}
+    public record BoxV2(String label, List<ItemV2> items) {}
+    public record WarehouseV1(String name, List<BoxV1> boxes) {}
+
+    @MigratesFrom(WarehouseV1.class)
+    public record WarehouseV2(String name, List<BoxV2> boxes) {}
+
+    @Test
+    public void testSimple() throws UnsupportedSchemaFeature {
+        final SimpleV1 source = new SimpleV1();
+        source.s = "abc";
+        source.i = 23;
+        assertSameAsStreaming(source, SimpleCurrent.class, MigratorProcessorTest_SimpleCurrentFromSimpleV1Migrator::migrate,
+                MigratorProcessorTest_SimpleCurrentFromSimpleV1Migrator.PLAN_STEPS);
+    }
+
+    @Test
+    public void testSeveralSourceVersions() throws UnsupportedSchemaFeature {
+        assertSameAsStreaming(
+                new RecordV1("Alice", 95, List.of("math", "art")),
+                RecordCurrent.class,
+                MigratorProcessorTest_RecordCurrentFromRecordV1Migrator::migrate,
+                MigratorProcessorTest_RecordCurrentFromRecordV1Migrator.PLAN_STEPS);
+        assertSameAsStreaming(
+                new RecordV2b("Alice", 95),
+                RecordCurrent.class,
+                MigratorProcessorTest_RecordCurrentFromRecordV2bMigrator::migrate,
+                MigratorProcessorTest_RecordCurrentFromRecordV2bMigrator.PLAN_STEPS);
+    }
+
+    @Test
+    public void testJsonPropertyNames() throws UnsupportedSchemaFeature {
+        final JsonPropV1 source = new JsonPropV1();
+        source.firstName = "Ann";
+        source.lastName = "Lee";
+        source.age = 40;
+        assertSameAsStreaming(source, JsonPropCurrent.class, MigratorProcessorTest_JsonPropCurrentFromJsonPropV1Migrator::migrate,
+                MigratorProcessorTest_JsonPropCurrentFromJsonPropV1Migrator.PLAN_STEPS);
+    }
+
+    @Test
+    public void testNestedArrays() throws UnsupportedSchemaFeature {
+        final WarehouseV1 source = new WarehouseV1("main", List.of(
+                new BoxV1("A", List.of(new ItemV1("red", 1), new ItemV1("blue", 2))),
+                new BoxV1("B", List.of())));
+        final String migrated = assertSameAsStreaming(
+                source, WarehouseV2.class, MigratorProcessorTest_WarehouseV2FromMigratorProcessorTest_WarehouseV1Migrator::migrate,
+                MigratorProcessorTest_WarehouseV2FromMigratorProcessorTest_WarehouseV1Migrator.PLAN_STEPS);
+        assertEquals(
+                new WarehouseV2("main", List.of(
+                        new BoxV2("A", List.of(new ItemV2("red", ""), new ItemV2("blue", ""))),
+                        new BoxV2("B", List.of()))),
+                SerializationUtil.deserialize(migrated, WarehouseV2.class));
+    }
+
+    /**
+     * Checks that a generated migrator was generated from the same steps as the plan
+     * worked out at run time and gives exactly the same JSON as a StreamingMigrator, and
+     * returns the JSON.
+     */
+    private static String assertSameAsStreaming(
+            final Object source,
+            final Class<?> targetClass,
+            final UnaryOperator<String> generatedMigrator,
+            final String generatedPlanSteps
+    ) throws UnsupportedSchemaFeature {
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(source.getClass()),
+                schemaOf(targetClass),
+                new UpdateRules(Map.of()));
+        assertEquals(plan.getSteps().toString(), generatedPlanSteps);
+        final String sourceJson = SerializationUtil.serialize(source);
+        final String migrated = generatedMigrator.apply(sourceJson);
+        assertEquals(new StreamingMigrator().migrate(plan, sourceJson), migrated);
+        return migrated;
+    }
+
+    @Test
+    public void testRejectsShapesItCannotModel(@TempDir final Path tempDir) {
+        final String header = "import com.mcherm.versionedserialization.migration.MigratesFrom;\n"
+                + "import com.fasterxml.jackson.annotation.*;\n"
+                + "import java.util.*;\n";
+        final String old = "class Old { public String a; }\n";
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { private String a; }",
+                "Field a is not public and has no public getter");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { public String a; public int getSize() { return 1; } }",
+                "Getter getSize() has no field behind it");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) @JsonIgnoreProperties(ignoreUnknown = true) class New { public String a; }",
+                "@JsonIgnoreProperties");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { @JsonInclude(JsonInclude.Include.NON_NULL) public String a; }",
+                "@JsonInclude");
+        assertRejected(tempDir, header + old
+                        + "abstract class Part { public String name; }\n"
+                        + "@MigratesFrom(Old.class) class New { public String a; public Part part; }",
+                "Part is abstract");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { public String a; public Map<String, String> map; }",
+                "Map values are not supported");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { private String a;"
+                        + " @JsonProperty(\"alpha\") public String getA() { return a; } }",
+                "Getter getA() renames the property to \"alpha\"");
+        assertRejected(tempDir, header + old
+                        + "@MigratesFrom(Old.class) class New { public String a; public int b;"
+                        + " @JsonIgnore public int getB() { return b; } }",
+                "Getter getB() has @JsonIgnore");
+        assertAccepted(tempDir, header + old
+                + "@MigratesFrom(Old.class) class New { private String a; private int b;"
+                + " public String getA() { return a; } @JsonProperty private int c; public int getB() { return b; } }");
+    }
+
+    /** Compiles a source file with the processor, checking that it reports the given error. */
+    private static void assertRejected(final Path tempDir, final String source, final String expectedError) {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile(tempDir, source);
+        assertTrue(
+                errors.stream().anyMatch(error -> error.getMessage(Locale.ROOT).contains(expectedError)),
+                "Expected an error containing \"" + expectedError + "\" but got " + errors);
+    }
+
+    /** Compiles a source file with the processor, checking that it reports no errors. */
+    private static void assertAccepted(final Path tempDir, final String source) {
+        assertEquals(List.of(), compile(tempDir, source));
+    }
+
+    /** Runs the processor over one source file, returning the errors it reports. */
+    private static List<Diagnostic<? extends JavaFileObject>> compile(final Path tempDir, final String source) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///New.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        compiler.getTask(null, null, diagnostics, List.of(
+                "-proc:only",
+                "-processor", MigratorProcessor.class.getName(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-s", tempDir.toString()
+        ), null, List.of(file)).call();
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .toList();
+    }
+}
@@ -25,13 +25,30 @@ import com.mcherm.versionedserialization.objects.contents.Circle;
 import com.mcherm.versionedserialization.objects.contents.Rectangle;
 import com.mcherm.versionedserialization.schemadiff.SchemaParser;
 import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.path.FieldPath;
+import com.mcherm.versionedserialization.schemadiff.schema.EnumValues;
+import com.mcherm.versionedserialization.schemadiff.schema.NormalSubschema;
+import com.mcherm.versionedserialization.schemadiff.schema.Properties;
 import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class MigratorTest {
@@ -152,6 +169,186 @@ public class MigratorTest {
     }
 
 
+    @Test
+    public void testManyChangesInsideOneArray() {
+        record PartV1(String id, int weight) {}
+        record PartV2(String id, String material) {}
+        record WidgetV1(String name, int shoeSize, String color, List<PartV1> parts, long serial) {}
+        record WidgetV2(String name, String soleShape, boolean active, List<PartV2> parts, double price) {}
+        record ObjectV1(String label, List<WidgetV1> widgets) {}
+        record ObjectV2(String label, List<WidgetV2> widgets) {}
+        final ObjectV1 sourceObject = new ObjectV1("shelf", List.of(
+                new WidgetV1("Reebok", 6, "red", List.of(new PartV1("sole", 3), new PartV1("lace", 1)), 1001L),
+                new WidgetV1("Vans", 5, "blue", List.of(), 1002L)
+        ));
+        final ObjectV2 expectedOutput = new ObjectV2("shelf", List.of(
+                new WidgetV2("Reebok", "", false, List.of(new PartV2("sole", ""), new PartV2("lace", "")), 0.0),
+                new WidgetV2("Vans", "", false, List.of(), 0.0)
+        ));
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of());
+        // --- run test ---
+        assertMigration(sourceObject, expectedOutput, testUpdateRules);
+    }
+
+    @Test
+    public void testRuleInsideArrayCalledOncePerElement() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name, String soleShape, String tag) {}
+        record ObjectV1(List<WidgetV1> widgets) {}
+        record ObjectV2(List<WidgetV2> widgets) {}
+        final ObjectV1 sourceObject = new ObjectV1(List.of(
+                new WidgetV1("Reebok", 6), new WidgetV1("Vans", 5), new WidgetV1("Keds", 7)));
+        final ObjectV2 expectedOutput = new ObjectV2(List.of(
+                new WidgetV2("Reebok", "", "t"), new WidgetV2("Vans", "", "t"), new WidgetV2("Keds", "", "t")));
+        final AtomicInteger callCount = new AtomicInteger();
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "widgets[]tag", (UpdateContext ctx, String field) -> {
+                    callCount.incrementAndGet();
+                    return TextNode.valueOf("t");
+                }
+        ));
+        // --- run test ---
+        assertMigration(sourceObject, expectedOutput, testUpdateRules);
+        // --- a single migration calls the rule once for each element ---
+        callCount.set(0);
+        new Migrator().migrate(
+                planFor(ObjectV1.class, ObjectV2.class, testUpdateRules), SerializationUtil.serializeAsNode(sourceObject));
+        assertEquals(3, callCount.get());
+    }
+
+    @Test
+    public void testBatchRuleInsideArrayCalledOncePerDocument() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name, String tag) {}
+        record ObjectV1(List<WidgetV1> widgets) {}
+        record ObjectV2(List<WidgetV2> widgets) {}
+        final ObjectV1 sourceObject = new ObjectV1(List.of(
+                new WidgetV1("Reebok", 6), new WidgetV1("Vans", 5), new WidgetV1("Keds", 7)));
+        final ObjectV2 expectedOutput = new ObjectV2(List.of(
+                new WidgetV2("Reebok", "Reebok-6"), new WidgetV2("Vans", "Vans-5"), new WidgetV2("Keds", "Keds-7")));
+        final AtomicInteger callCount = new AtomicInteger();
+        final BatchUpdateRule tagRule = (contexts, containingObjects, field) -> {
+            callCount.incrementAndGet();
+            assertEquals(3, contexts.size());
+            return containingObjects.stream()
+                    .map(widget -> (JsonNode) TextNode.valueOf(
+                            widget.get("name").asText() + "-" + widget.get("shoeSize").asText()))
+                    .toList();
+        };
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of("widgets[]tag", tagRule));
+        // --- run test ---
+        assertMigration(sourceObject, expectedOutput, testUpdateRules);
+        // --- a single migration calls the rule once for the whole document ---
+        callCount.set(0);
+        new Migrator().migrate(
+                planFor(ObjectV1.class, ObjectV2.class, testUpdateRules), SerializationUtil.serializeAsNode(sourceObject));
+        assertEquals(1, callCount.get());
+    }
+
+    @Test
+    public void testParallelArrayGivesSameResult() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name, String soleShape, String tag) {}
+        record ObjectV1(List<WidgetV1> widgets) {}
+        record ObjectV2(List<WidgetV2> widgets) {}
+        final List<WidgetV1> sourceWidgets = new ArrayList<>();
+        final List<WidgetV2> expectedWidgets = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            sourceWidgets.add(new WidgetV1("w" + i, i));
+            expectedWidgets.add(new WidgetV2("w" + i, "", "t"));
+        }
+        final AtomicInteger callCount = new AtomicInteger();
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(ObjectV1.class),
+                schemaOf(ObjectV2.class),
+                new UpdateRules(Map.of(
+                        "widgets[]tag", (UpdateContext ctx, String field) -> {
+                            callCount.incrementAndGet();
+                            return TextNode.valueOf("t");
+                        }
+                )));
+        final JsonNode sourceDocument = SerializationUtil.serializeAsNode(new ObjectV1(sourceWidgets));
+        final JsonNode expectedDocument = SerializationUtil.serializeAsNode(new ObjectV2(expectedWidgets));
+        final Migrator migrator = new Migrator(100);
+        assertEquals(expectedDocument, migrator.migrate(plan, sourceDocument));
+        assertEquals(expectedDocument, migrator.migrateInPlace(plan, sourceDocument.deepCopy()));
+        assertEquals(10000, callCount.get());
+    }
+
+    @Test
+    public void testPureRuleCalledOncePerDistinctInput() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = schemaOf(SimpleV1.class);
+        final SchemaInfo targetSchema = schemaOf(SimpleV2a.class);
+        final AtomicInteger callCount = new AtomicInteger();
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "extra", PureUpdateRule.of(List.of("s"), (UpdateContext ctx, String field) -> {
+                    callCount.incrementAndGet();
+                    return TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText().toUpperCase());
+                })
+        ));
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, testUpdateRules);
+        final Migrator migrator = new Migrator();
+        for (int i = 0; i < 10; i++) {
+            final SimpleV1 simpleV1 = new SimpleV1();
+            simpleV1.s = i % 2 == 0 ? "even" : "odd";
+            simpleV1.i = i;
+            final SimpleV2a simpleV2A = new SimpleV2a();
+            simpleV2A.s = simpleV1.s;
+            simpleV2A.i = i;
+            simpleV2A.extra = simpleV1.s.toUpperCase();
+            assertEquals(
+                    SerializationUtil.serializeAsNode(simpleV2A),
+                    migrator.migrate(plan, SerializationUtil.serializeAsNode(simpleV1)));
+        }
+        assertEquals(2, callCount.get());
+    }
+
+    @Test
+    public void testReusedUpdateContexts() throws UnsupportedSchemaFeature, InterruptedException {
+        final SchemaInfo sourceSchema = schemaOf(SimpleV1.class);
+        final SchemaInfo targetSchema = schemaOf(SimpleV2a.class);
+        final Set<UpdateContext> updateContexts = Collections.newSetFromMap(new IdentityHashMap<>());
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "extra", (UpdateContext ctx, String field) -> {
+                    updateContexts.add(ctx);
+                    assertSame(ctx.getSourceValue("s").orElseThrow(), ctx.getSourceValue("s").orElseThrow());
+                    return TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText().toUpperCase());
+                }
+        ));
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, testUpdateRules);
+        final Migrator migrator = new Migrator(Integer.MAX_VALUE, true);
+        for (int batch = 0; batch < 3; batch++) {
+            final List<JsonNode> sourceDocuments = new ArrayList<>();
+            final List<JsonNode> expectedDocuments = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final SimpleV1 simpleV1 = new SimpleV1();
+                simpleV1.s = "doc" + batch + i;
+                simpleV1.i = i;
+                final SimpleV2a simpleV2A = new SimpleV2a();
+                simpleV2A.s = simpleV1.s;
+                simpleV2A.i = i;
+                simpleV2A.extra = simpleV1.s.toUpperCase();
+                sourceDocuments.add(SerializationUtil.serializeAsNode(simpleV1));
+                expectedDocuments.add(SerializationUtil.serializeAsNode(simpleV2A));
+            }
+            assertEquals(expectedDocuments, migrator.migrateAll(plan, sourceDocuments));
+            assertEquals(expectedDocuments, migrator.migrateAllInPlace(plan, sourceDocuments));
+        }
+        assertEquals(4, updateContexts.size());
+        // the pool belongs to the Migrator, so a new (virtual) thread reuses them too
+        final List<JsonNode> results = new ArrayList<>();
+        final Thread thread = Thread.ofVirtual().start(() -> results.addAll(migrator.migrateAll(plan, List.of(
+                SerializationUtil.deserializeAsNode("{\"s\":\"x\",\"i\":1}")))));
+        thread.join();
+        assertEquals(List.of(SerializationUtil.deserializeAsNode("{\"s\":\"x\",\"i\":1,\"extra\":\"X\"}")), results);
+        assertEquals(4, updateContexts.size());
+        // and contexts in the pool don't hold on to what they were used for
+        for (UpdateContext updateContext : updateContexts) {
+            assertNull(updateContext.getSourceSchema());
+            assertTrue(updateContext.getSourceDocument().isMissingNode());
+        }
+    }
+
     // ===== Typed tests: various field type additions and changes =====
 
     @Test
@@ -308,6 +505,193 @@ public class MigratorTest {
         assertMigration(source, expected, testUpdateRules);
     }
 
+    // ===== MigrationPlan tests: one plan reused for many documents =====
+
+    @Test
+    public void testPlan_reusedAcrossDocuments() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name, String soleShape) {}
+        record ObjectV1(int shelfNumber, List<WidgetV1> widgets) {}
+        record ObjectV2(int shelfNumber, List<WidgetV2> widgets, String label) {}
+        final SchemaInfo sourceSchema = schemaOf(ObjectV1.class);
+        final SchemaInfo targetSchema = schemaOf(ObjectV2.class);
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "label", (UpdateContext ctx, String field) ->
+                        TextNode.valueOf("shelf " + ctx.getSourceValue("shelfNumber").orElseThrow().asText())
+        ));
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, testUpdateRules);
+        final Migrator migrator = new Migrator();
+        for (int shelf = 1; shelf <= 3; shelf++) {
+            final ObjectV1 sourceObject = new ObjectV1(shelf, List.of(new WidgetV1("Reebok", shelf)));
+            final ObjectV2 expectedOutput = new ObjectV2(shelf, List.of(new WidgetV2("Reebok", "")), "shelf " + shelf);
+            final JsonNode sourceDocument = SerializationUtil.serializeAsNode(sourceObject);
+            final JsonNode targetDocument = migrator.migrate(plan, sourceDocument);
+            assertEquals(SerializationUtil.serializeAsNode(expectedOutput), targetDocument);
+            assertEquals(SerializationUtil.serializeAsNode(sourceObject), sourceDocument); // source is unchanged
+        }
+    }
+
+    @Test
+    public void testPlan_missingRuleIsRejected() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = schemaOf(TypedV1.class);
+        final SchemaInfo targetSchema = schemaOf(TypedV2c.class);
+        assertThrows(RuntimeException.class,
+                () -> new MigrationPlan(sourceSchema, targetSchema, new UpdateRules(Map.of())));
+    }
+
+    @Test
+    public void testPlan_identityReturnsCopyOfSource() throws UnsupportedSchemaFeature {
+        final SchemaInfo sourceSchema = schemaOf(SimpleV1.class);
+        final SchemaInfo targetSchema = schemaOf(SimpleV1.class);
+        assertEquals(sourceSchema.getFingerprint(), targetSchema.getFingerprint());
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, new UpdateRules(Map.of()));
+        assertTrue(plan.isIdentity());
+        final SimpleV1 simpleV1 = new SimpleV1();
+        simpleV1.s = "abc";
+        simpleV1.i = 23;
+        final JsonNode sourceDocument = SerializationUtil.serializeAsNode(simpleV1);
+        final JsonNode targetDocument = new Migrator().migrate(plan, sourceDocument);
+        assertEquals(sourceDocument, targetDocument);
+        assertNotSame(sourceDocument, targetDocument);
+        assertSame(sourceDocument, new Migrator().migrateInPlace(plan, sourceDocument));
+        final String sourceJson = SerializationUtil.serialize(simpleV1);
+        assertSame(sourceJson, new StreamingMigrator().migrate(plan, sourceJson));
+
+        final SchemaInfo otherSchema = schemaOf(SimpleV2a.class);
+        assertNotEquals(sourceSchema.getFingerprint(), otherSchema.getFingerprint());
+        assertFalse(new MigrationPlan(sourceSchema, otherSchema, new UpdateRules(Map.of())).isIdentity());
+    }
+
+    @Test
+    public void testPlan_sameFingerprintButDifferentSchemas() {
+        final SchemaInfo sourceSchema = enumSchema("a\",\"b");
+        final SchemaInfo targetSchema = enumSchema("a", "b");
+        assertEquals(sourceSchema.getFingerprint(), targetSchema.getFingerprint());
+        assertNotEquals(sourceSchema, targetSchema);
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, new UpdateRules(Map.of(
+                "e", (UpdateContext ctx, String field) -> TextNode.valueOf("a"))));
+        assertFalse(plan.isIdentity());
+    }
+
+    /** Returns a schema with one field, which holds one of the given enum values. */
+    private static SchemaInfo enumSchema(final String... values) {
+        return new SchemaInfo("", Map.of(), new Properties(Map.of("e", NormalSubschema.fromFields(
+                false, null, null, null, new EnumValues(List.of(values)), "Letter", null))));
+    }
+
+    // ===== In-place tests: migrating without copying the source =====
+
+    @Test
+    public void testInPlace_ruleReadsValueChangedBeneath() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name) {}
+        record ObjectV1(WidgetV1 widget) {}
+        record ObjectV2(WidgetV2 widget, WidgetV1 original) {}
+        final ObjectV1 sourceObject = new ObjectV1(new WidgetV1("Reebok", 6));
+        final ObjectV2 expectedOutput = new ObjectV2(new WidgetV2("Reebok"), new WidgetV1("Reebok", 6));
+        final SchemaInfo sourceSchema = schemaOf(ObjectV1.class);
+        final SchemaInfo targetSchema = schemaOf(ObjectV2.class);
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "original", (UpdateContext ctx, String field) -> ctx.getSourceValue("widget").orElseThrow()
+        ));
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, testUpdateRules);
+        final JsonNode document = SerializationUtil.serializeAsNode(sourceObject);
+        final JsonNode targetDocument = new Migrator().migrateInPlace(plan, document);
+        assertSame(document, targetDocument);
+        assertEquals(SerializationUtil.serializeAsNode(expectedOutput), targetDocument);
+    }
+
+    @Test
+    public void testInPlace_pureRuleReadsSeveralValues() throws UnsupportedSchemaFeature {
+        record WidgetV1(String name, int shoeSize) {}
+        record WidgetV2(String name) {}
+        record ObjectV1(WidgetV1 widget) {}
+        record ObjectV2(WidgetV2 widget, WidgetV1 original, String label) {}
+        final FieldPath widget = FieldPath.of("widget");
+        final FieldPath name = FieldPath.of("widget/name");
+        final FieldPath size = FieldPath.of("widget/shoeSize");
+        final ObjectV1 sourceObject = new ObjectV1(new WidgetV1("Reebok", 6));
+        final ObjectV2 expectedOutput = new ObjectV2(
+                new WidgetV2("Reebok"), new WidgetV1("Reebok", 6), "Reebok size 6");
+        final SchemaInfo sourceSchema = schemaOf(ObjectV1.class);
+        final SchemaInfo targetSchema = schemaOf(ObjectV2.class);
+        final UpdateRules testUpdateRules = new UpdateRules(Map.of(
+                "original", PureUpdateRule.of(List.of("widget"),
+                        (UpdateContext ctx, String field) -> ctx.getSourceValue(widget).orElseThrow()),
+                "label", PureUpdateRule.of(List.of("widget/name", "widget/shoeSize"), (UpdateContext ctx, String field) -> {
+                    final JsonNode[] values = ctx.getSourceValues(size, FieldPath.of("widget/missing"), name);
+                    assertNull(values[1]);
+                    return TextNode.valueOf(values[2].asText() + " size " + values[0].asInt());
+                })
+        ));
+        final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, testUpdateRules);
+        assertEquals(3, plan.getPrefetchPaths().length);
+        final JsonNode document = SerializationUtil.serializeAsNode(sourceObject);
+        final JsonNode targetDocument = new Migrator().migrateInPlace(plan, document);
+        assertSame(document, targetDocument);
+        assertEquals(SerializationUtil.serializeAsNode(expectedOutput), targetDocument);
+    }
+
+    @Test
+    public void testTargetOrder_fieldsInSchemaOrder() throws UnsupportedSchemaFeature {
+        record PartV1(String name, int count) {}
+        record PartV2(String sku, String name, int count) {}
+        record KitV1(String title, List<PartV1> parts) {}
+        record KitV2(String title, String owner, List<PartV2> parts) {}
+        final KitV1 sourceObject = new KitV1("kit", List.of(new PartV1("bolt", 4), new PartV1("nut", 8)));
+        final KitV2 expectedOutput = new KitV2("kit", "nobody", List.of(
+                new PartV2("", "bolt", 4), new PartV2("", "nut", 8)));
+        final SchemaInfo targetSchema = schemaOf(KitV2.class);
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(KitV1.class),
+                targetSchema,
+                new UpdateRules(Map.of("owner", (UpdateContext ctx, String field) -> TextNode.valueOf("nobody"))));
+        final JsonNode sourceDocument = SerializationUtil.serializeAsNode(sourceObject);
+        final JsonNode targetDocument = new Migrator().migrateInTargetOrder(plan, sourceDocument);
+        assertEquals(SerializationUtil.serializeAsNode(expectedOutput), targetDocument);
+        assertEquals(
+                List.copyOf(targetSchema.getProperties().getProperties().keySet()),
+                targetDocument.properties().stream().map(Map.Entry::getKey).toList());
+        final NormalSubschema partsSchema =
+                (NormalSubschema) targetSchema.getProperties().getProperties().get("parts");
+        final NormalSubschema partSchema = (NormalSubschema) partsSchema.getItemsType();
+        assert partSchema != null && partSchema.getProperties() != null;
+        for (JsonNode part : targetDocument.get("parts")) {
+            assertEquals(
+                    List.copyOf(partSchema.getProperties().getProperties().keySet()),
+                    part.properties().stream().map(Map.Entry::getKey).toList());
+        }
+        assertEquals(SerializationUtil.serializeAsNode(sourceObject), sourceDocument);
+    }
+
+    @Test
+    public void testResultSharesNoNodes() throws UnsupportedSchemaFeature {
+        record Inner(String a) {}
+        record ObjectV1(Inner inner) {}
+        record ObjectV2(Inner inner, Inner copy, List<String> tags) {}
+        final MigrationPlan plan = planFor(ObjectV1.class, ObjectV2.class, new UpdateRules(Map.of(
+                "copy", (UpdateContext ctx, String field) -> ctx.getSourceValue("inner").orElseThrow())));
+        final JsonNode source = SerializationUtil.serializeAsNode(new ObjectV1(new Inner("x")));
+        final Migrator migrator = new Migrator();
+        final JsonNode first = migrator.migrate(plan, source);
+        final JsonNode second = migrator.migrate(plan, source);
+        assertEquals(SerializationUtil.serializeAsNode(new ObjectV2(new Inner("x"), new Inner("x"), List.of())), first);
+        // the rule returned a node from the source, but the result has its own
+        assertNotSame(source.get("inner"), first.get("copy"));
+        assertNotSame(first.get("inner"), first.get("copy"));
+        // each document gets its own copy of a default value
+        assertNotSame(first.get("tags"), second.get("tags"));
+    }
+
+    /** Returns the plan for migrating from one class's schema to another's. */
+    private static MigrationPlan planFor(
+            final Class<?> sourceClass,
+            final Class<?> targetClass,
+            final UpdateRules updateRules
+    ) throws UnsupportedSchemaFeature {
+        return new MigrationPlan(schemaOf(sourceClass), schemaOf(targetClass), updateRules);
+    }
+
     /** Easy way to declare tests in this file. */
     private void assertMigration(Object sourceObject, Object expectedOutput, UpdateRules updateRules) {
         try {
@@ -315,8 +699,8 @@ public class MigratorTest {
             final Class<?> targetClass = expectedOutput.getClass();
             final JsonNode sourceDocument = SerializationUtil.serializeAsNode(sourceObject);
             final JsonNode expectedTargetDocument = SerializationUtil.serializeAsNode(expectedOutput);
-            final SchemaInfo sourceSchema = SchemaParser.parse(SerializationUtil.generateSchema(sourceClass));
-            final SchemaInfo targetSchema = SchemaParser.parse(SerializationUtil.generateSchema(targetClass));
+            final SchemaInfo sourceSchema = schemaOf(sourceClass);
+            final SchemaInfo targetSchema = schemaOf(targetClass);
 
             // --- perform the work ---
             final Migrator migrator = new Migrator();
@@ -324,6 +708,14 @@ public class MigratorTest {
 
             // --- compare the output ---
             assertEquals(expectedTargetDocument, targetDocument);
+
+            // --- migrating in place must give the same result ---
+            final JsonNode ownedDocument = sourceDocument.deepCopy();
+            final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, updateRules);
+            assertEquals(expectedTargetDocument, migrator.migrateInPlace(plan, ownedDocument));
+
+            // --- so must building the target in the target schema's order ---
+            assertEquals(expectedTargetDocument, migrator.migrateInTargetOrder(plan, sourceDocument));
         } catch (final UnsupportedSchemaFeature err) {
             err.printStackTrace();
             fail();
@@ -0,0 +1,99 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests of NdjsonMigrator. */
+public class NdjsonMigratorTest {
+
+    private static final int RECORD_COUNT = 3000;
+
+    @Test
+    public void testManySmallChunks(@TempDir final Path dir) throws IOException, UnsupportedSchemaFeature {
+        final Path source = dir.resolve("source.ndjson");
+        final Path target = dir.resolve("target.ndjson");
+        Files.write(source, IntStream.range(0, RECORD_COUNT)
+                .mapToObj(i -> SerializationUtil.serialize(simpleV1(i)))
+                .toList());
+
+        // chunks far smaller than a line, and of a size that doesn't line up with the lines
+        final NdjsonMigrator.Report report = new NdjsonMigrator(new StreamingMigrator(), 4, 97)
+                .migrate(createPlan(), source, target);
+
+        assertEquals(RECORD_COUNT, report.recordsMigrated());
+        assertEquals(Files.size(source), report.bytesRead());
+        final List<String> lines = Files.readAllLines(target);
+        assertEquals(RECORD_COUNT, lines.size());
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            assertEquals(
+                    SerializationUtil.serializeAsNode(simpleV2a(i)),
+                    SerializationUtil.deserializeAsNode(lines.get(i)));
+        }
+    }
+
+    @Test
+    public void testNoTrailingNewlineAndBlankLines(@TempDir final Path dir) throws IOException, UnsupportedSchemaFeature {
+        final Path source = dir.resolve("source.ndjson");
+        final Path target = dir.resolve("target.ndjson");
+        Files.writeString(source, SerializationUtil.serialize(simpleV1(1)) + "\n\n"
+                + SerializationUtil.serialize(simpleV1(2)));
+
+        final NdjsonMigrator.Report report = new NdjsonMigrator(2).migrate(createPlan(), source, target);
+
+        assertEquals(2, report.recordsMigrated());
+        assertEquals(
+                SerializationUtil.serialize(simpleV2a(1)) + "\n" + SerializationUtil.serialize(simpleV2a(2)) + "\n",
+                Files.readString(target));
+    }
+
+    @Test
+    public void testBadRecord(@TempDir final Path dir) throws IOException, UnsupportedSchemaFeature {
+        final Path source = dir.resolve("source.ndjson");
+        final Path target = dir.resolve("target.ndjson");
+        Files.writeString(source, SerializationUtil.serialize(simpleV1(1)) + "\n{ not json\n");
+
+        assertThrows(IOException.class, () -> new NdjsonMigrator(2).migrate(createPlan(), source, target));
+        assertEquals(List.of(source), Files.list(dir).toList());
+    }
+
+    private static MigrationPlan createPlan() throws UnsupportedSchemaFeature {
+        return new MigrationPlan(
+                schemaOf(SimpleV1.class),
+                schemaOf(SimpleV2a.class),
+                new UpdateRules(Map.of(
+                        "extra", (UpdateContext ctx, String field) ->
+                                TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText() + "!")
+                )));
+    }
+
+    private static SimpleV1 simpleV1(final int i) {
+        final SimpleV1 simpleV1 = new SimpleV1();
+        simpleV1.s = "doc" + i;
+        simpleV1.i = i;
+        return simpleV1;
+    }
+
+    private static SimpleV2a simpleV2a(final int i) {
+        final SimpleV2a simpleV2a = new SimpleV2a();
+        simpleV2a.s = "doc" + i;
+        simpleV2a.i = i;
+        simpleV2a.extra = "doc" + i + "!";
+        return simpleV2a;
+    }
+}
@@ -0,0 +1,157 @@
+package com.mcherm.versionedserialization.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.objects.RecordV1;
+import com.mcherm.versionedserialization.objects.RecordV2b;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.objects.SimpleV2b;
+import com.mcherm.versionedserialization.schemadiff.UnsupportedSchemaFeature;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests of StreamingMigrator. */
+public class StreamingMigratorTest {
+
+    @Test
+    public void testSimple_V1ToV2a_addDefault() {
+        final SimpleV1 source = new SimpleV1();
+        source.s = "abc";
+        source.i = 23;
+        final SimpleV2a expected = new SimpleV2a();
+        expected.s = "abc";
+        expected.i = 23;
+        expected.extra = "";
+        assertStreamingMigration(source, expected, new UpdateRules(Map.of()), true);
+    }
+
+    @Test
+    public void testSimple_V1ToV2b_drop() {
+        final SimpleV1 source = new SimpleV1();
+        source.s = "abc";
+        source.i = 23;
+        final SimpleV2b expected = new SimpleV2b();
+        expected.i = 23;
+        assertStreamingMigration(source, expected, new UpdateRules(Map.of()), true);
+    }
+
+    @Test
+    public void testRecord_V1ToV2b_dropList() {
+        final RecordV1 source = new RecordV1("Alice", 95, List.of("math", "art"));
+        final RecordV2b expected = new RecordV2b("Alice", 95);
+        assertStreamingMigration(source, expected, new UpdateRules(Map.of()), true);
+    }
+
+    @Test
+    public void testNestedArrays() {
+        record ItemV1(String color, int weight) {}
+        record ItemV2(String color, String size) {}
+        record BoxV1(String label, List<ItemV1> items) {}
+        record BoxV2(String label, List<ItemV2> items) {}
+        record WarehouseV1(String name, List<BoxV1> boxes) {}
+        record WarehouseV2(String name, List<BoxV2> boxes) {}
+        final WarehouseV1 source = new WarehouseV1("main", List.of(
+                new BoxV1("A", List.of(new ItemV1("red", 1), new ItemV1("blue", 2))),
+                new BoxV1("B", List.of()),
+                new BoxV1("C", List.of(new ItemV1("green", 3)))
+        ));
+        final WarehouseV2 expected = new WarehouseV2("main", List.of(
+                new BoxV2("A", List.of(new ItemV2("red", ""), new ItemV2("blue", ""))),
+                new BoxV2("B", List.of()),
+                new BoxV2("C", List.of(new ItemV2("green", "")))
+        ));
+        assertStreamingMigration(source, expected, new UpdateRules(Map.of()), true);
+    }
+
+    @Test
+    public void testRuleFallsBackToTree() {
+        final SimpleV1 source = new SimpleV1();
+        source.s = "abc";
+        source.i = 23;
+        final SimpleV2a expected = new SimpleV2a();
+        expected.s = "abc";
+        expected.i = 23;
+        expected.extra = "abc!";
+        final UpdateRules updateRules = new UpdateRules(Map.of(
+                "extra", (UpdateContext ctx, String field) ->
+                        TextNode.valueOf(ctx.getSourceValue("s").orElseThrow().asText() + "!")
+        ));
+        assertStreamingMigration(source, expected, updateRules, false);
+    }
+
+    @Test
+    public void testStreams() throws UnsupportedSchemaFeature, IOException {
+        final SimpleV1 source = new SimpleV1();
+        source.s = "abc";
+        source.i = 23;
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(SimpleV1.class),
+                schemaOf(SimpleV2b.class),
+                new UpdateRules(Map.of()));
+        final ByteArrayInputStream in = new ByteArrayInputStream(
+                SerializationUtil.serialize(source).getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingMigrator().migrate(plan, in, out);
+        assertEquals("{\"i\":23}", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUntouchedSubtreeCopiedAsIs() throws UnsupportedSchemaFeature, IOException {
+        record Widget(String label, List<Double> sizes) {}
+        record HolderV1(String name, Widget widget, int count) {}
+        record HolderV2(String name, Widget widget) {}
+        final MigrationPlan plan = new MigrationPlan(
+                schemaOf(HolderV1.class),
+                schemaOf(HolderV2.class),
+                new UpdateRules(Map.of()));
+        final String widgetJson = "{ \"label\" : \"caf\\u00e9\", \"sizes\":[1.50, 2E3 ] }";
+        final String sourceJson = "{\"name\":\"w\",\"widget\":" + widgetJson + ",\"count\":3}";
+        final String expectedJson = "{\"name\":\"w\",\"widget\":" + widgetJson + "}";
+
+        assertEquals(expectedJson, new StreamingMigrator().migrate(plan, sourceJson));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingMigrator().migrate(plan, sourceJson.getBytes(StandardCharsets.UTF_8), out);
+        assertEquals(expectedJson, out.toString(StandardCharsets.UTF_8));
+    }
+
+    /** Migrates with the StreamingMigrator and checks the result. */
+    private void assertStreamingMigration(
+            final Object sourceObject,
+            final Object expectedOutput,
+            final UpdateRules updateRules,
+            final boolean expectStreamable
+    ) {
+        try {
+            final SchemaInfo sourceSchema = schemaOf(sourceObject.getClass());
+            final SchemaInfo targetSchema = schemaOf(expectedOutput.getClass());
+            final MigrationPlan plan = new MigrationPlan(sourceSchema, targetSchema, updateRules);
+            if (expectStreamable) {
+                assertFalse(plan.requiresWholeDocument());
+            } else {
+                assertTrue(plan.requiresWholeDocument());
+            }
+
+            final String targetJson = new StreamingMigrator().migrate(plan, SerializationUtil.serialize(sourceObject));
+
+            final JsonNode expectedTargetDocument = SerializationUtil.serializeAsNode(expectedOutput);
+            assertEquals(expectedTargetDocument, SerializationUtil.deserializeAsNode(targetJson));
+        } catch (final UnsupportedSchemaFeature err) {
+            throw new RuntimeException(err);
+        }
+    }
+}
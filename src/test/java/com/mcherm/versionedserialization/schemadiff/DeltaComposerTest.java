@@ -0,0 +1,274 @@
+package com.mcherm.versionedserialization.schemadiff;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import com.mcherm.versionedserialization.migration.MigrationPlan;
+import com.mcherm.versionedserialization.migration.Migrator;
+import com.mcherm.versionedserialization.migration.UpdateContext;
+import com.mcherm.versionedserialization.migration.UpdateRules;
+import com.mcherm.versionedserialization.objects.SimpleV1;
+import com.mcherm.versionedserialization.objects.SimpleV2a;
+import com.mcherm.versionedserialization.objects.SimpleV2b;
+import com.mcherm.versionedserialization.schemadiff.deltas.SchemaDeltas;
+import com.mcherm.versionedserialization.schemadiff.schema.SchemaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.mcherm.versionedserialization.TestSchemas.schemaOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/** Tests of DeltaComposer. */
+public class DeltaComposerTest {
+
+    record Expect(String field, String effect) {}
+
+    @Test
+    public void testAddThenDrop_cancels() {
+        // SimpleV2a adds "extra", SimpleV2b drops "s" and "extra"
+        assertComposedDeltas(
+                List.of(SimpleV1.class, SimpleV2a.class, SimpleV2b.class),
+                Set.of(
+                        new Expect("s", "Drop")
+                )
+        );
+    }
+
+    @Test
+    public void testAddThenChange_isCustomAdd() {
+        record V1(String name) {}
+        record V2(String name, int count) {}
+        record V3(String name, String count) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("count", "CustomAdd")
+                )
+        );
+    }
+
+    @Test
+    public void testChangeThenChange_isChange() {
+        record V1(int x) {}
+        record V2(String x) {}
+        record V3(boolean x) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("x", "Change")
+                )
+        );
+    }
+
+    @Test
+    public void testChangeThenDrop_isDrop() {
+        record V1(int x, String y) {}
+        record V2(String x, String y) {}
+        record V3(String y) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("x", "Drop")
+                )
+        );
+    }
+
+    @Test
+    public void testDropThenAdd_isAdd() {
+        record V1(int x, String y) {}
+        record V2(String y) {}
+        record V3(int x, String y) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("x", "DefaultingAdd")
+                )
+        );
+    }
+
+    @Test
+    public void testInnerChangesThenDropOuter_onlyDrop() {
+        record InnerV1(String a, int b) {}
+        record InnerV2(String a) {}
+        record V1(InnerV1 inner, List<InnerV1> inners) {}
+        record V2(InnerV2 inner, List<InnerV2> inners) {}
+        record V3(String note) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("inner", "Drop"),
+                        new Expect("inners", "Drop"),
+                        new Expect("note", "DefaultingAdd")
+                )
+        );
+    }
+
+    @Test
+    public void testUnrelatedChanges_allKept() {
+        record InnerV1(String a) {}
+        record InnerV2(String a, int b) {}
+        record V1(String s, List<InnerV1> inners) {}
+        record V2(List<InnerV1> inners) {}
+        record V3(List<InnerV2> inners, boolean flag) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("s", "Drop"),
+                        new Expect("inners[]b", "DefaultingAdd"),
+                        new Expect("flag", "DefaultingAdd")
+                )
+        );
+    }
+
+    @Test
+    public void testAddThenInnerChanges_foldedIntoAdd() {
+        record InnerB(String a) {}
+        record InnerC(String a, int b) {}
+        record V1(String name) {}
+        record V2(String name, InnerB inner, List<InnerB> inners) {}
+        record V3(String name, InnerC inner, List<InnerC> inners) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("inner", "CustomAdd"),
+                        new Expect("inners", "DefaultingAdd")
+                )
+        );
+    }
+
+    @Test
+    public void testChangeThenInnerChanges_foldedIntoChange() {
+        record InnerB(String a) {}
+        record InnerC(String a, int b) {}
+        record V1(String inner) {}
+        record V2(InnerB inner) {}
+        record V3(InnerC inner) {}
+        assertComposedDeltas(
+                List.of(V1.class, V2.class, V3.class),
+                Set.of(
+                        new Expect("inner", "Change")
+                )
+        );
+    }
+
+    @Test
+    public void testComposedPlanMatchesHops_withoutRules() {
+        record InnerB(String a) {}
+        record InnerC(String a, int b) {}
+        record V1(String s, List<InnerB> kept) {}
+        record V2(String s, List<InnerB> kept, List<InnerB> added) {}
+        record V3(List<InnerC> kept, List<InnerC> added, boolean flag) {}
+        assertComposedPlanMatchesHops(
+                List.of(V1.class, V2.class, V3.class),
+                new V1("s", List.of(new InnerB("x"), new InnerB("y"))),
+                List.of(new UpdateRules(Map.of()), new UpdateRules(Map.of())),
+                new UpdateRules(Map.of())
+        );
+    }
+
+    @Test
+    public void testComposedPlanMatchesHops_addThenInnerChanges() {
+        record InnerB(String a) {}
+        record InnerC(String a, int b) {}
+        record V1(String name) {}
+        record V2(String name, InnerB inner) {}
+        record V3(String name, InnerC inner) {}
+        assertComposedPlanMatchesHops(
+                List.of(V1.class, V2.class, V3.class),
+                new V1("n"),
+                List.of(
+                        new UpdateRules(Map.of("inner", (UpdateContext ctx, String field) ->
+                                SerializationUtil.serializeAsNode(new InnerB("x")))),
+                        new UpdateRules(Map.of())),
+                new UpdateRules(Map.of("inner", (UpdateContext ctx, String field) ->
+                        SerializationUtil.serializeAsNode(new InnerC("x", 0))))
+        );
+    }
+
+    @Test
+    public void testComposedPlanMatchesHops_changeThenInnerChanges() {
+        record InnerB(String a) {}
+        record InnerC(String a, int b) {}
+        record V1(String inner) {}
+        record V2(InnerB inner) {}
+        record V3(InnerC inner) {}
+        assertComposedPlanMatchesHops(
+                List.of(V1.class, V2.class, V3.class),
+                new V1("x"),
+                List.of(
+                        new UpdateRules(Map.of("inner", (UpdateContext ctx, String field) ->
+                                SerializationUtil.serializeAsNode(
+                                        new InnerB(ctx.getSourceValue("inner").orElseThrow().asText())))),
+                        new UpdateRules(Map.of())),
+                new UpdateRules(Map.of("inner", (UpdateContext ctx, String field) ->
+                        SerializationUtil.serializeAsNode(
+                                new InnerC(ctx.getSourceValue("inner").orElseThrow().asText(), 0))))
+        );
+    }
+
+    /** Composes the deltas between each consecutive pair of classes and checks the result. */
+    private void assertComposedDeltas(List<Class<?>> versions, Set<Expect> expected) {
+        try {
+            final List<SchemaInfo> schemas = schemasOf(versions);
+            final SchemaDeltas composed = DeltaComposer.compose(schemas, hopDeltas(schemas));
+            assertEquals(
+                    expected,
+                    composed.getDeltas().stream()
+                            .map(x -> new Expect(x.getFieldName(), x.getClass().getSimpleName()))
+                            .collect(Collectors.toSet())
+            );
+        } catch (final UnsupportedSchemaFeature err) {
+            err.printStackTrace();
+            fail();
+        }
+    }
+
+    /**
+     * Migrates a document through each hop in turn, and again with a single plan made from
+     * the composed deltas, and checks that both give the same result.
+     */
+    private void assertComposedPlanMatchesHops(
+            List<Class<?>> versions,
+            Object sourceObject,
+            List<UpdateRules> hopRules,
+            UpdateRules composedRules
+    ) {
+        try {
+            final List<SchemaInfo> schemas = schemasOf(versions);
+            final Migrator migrator = new Migrator();
+            final JsonNode sourceDocument = SerializationUtil.serializeAsNode(sourceObject);
+            JsonNode hopByHop = sourceDocument;
+            for (int i = 0; i < hopRules.size(); i++) {
+                hopByHop = migrator.migrate(new MigrationPlan(schemas.get(i), schemas.get(i + 1), hopRules.get(i)), hopByHop);
+            }
+            final MigrationPlan composedPlan = new MigrationPlan(
+                    schemas.getFirst(), schemas.getLast(), DeltaComposer.compose(schemas, hopDeltas(schemas)), composedRules);
+            assertEquals(hopByHop, migrator.migrate(composedPlan, sourceDocument));
+        } catch (final UnsupportedSchemaFeature err) {
+            err.printStackTrace();
+            fail();
+        }
+    }
+
+    private static List<SchemaInfo> schemasOf(List<Class<?>> versions) throws UnsupportedSchemaFeature {
+        final List<SchemaInfo> schemas = new ArrayList<>();
+        for (Class<?> version : versions) {
+            schemas.add(schemaOf(version));
+        }
+        return schemas;
+    }
+
+    /** Returns the deltas between each consecutive pair of schemas. */
+    private static List<SchemaDeltas> hopDeltas(List<SchemaInfo> schemas) {
+        final List<SchemaDeltas> hops = new ArrayList<>();
+        for (int i = 0; i < schemas.size() - 1; i++) {
+            hops.add(SchemaDiffer.diff(schemas.get(i), schemas.get(i + 1)));
+        }
+        return hops;
+    }
+}
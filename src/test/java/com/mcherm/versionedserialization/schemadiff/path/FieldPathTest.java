@@ -0,0 +1,84 @@
+package com.mcherm.versionedserialization.schemadiff.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.mcherm.versionedserialization.SerializationUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests of FieldPath. */
+public class FieldPathTest {
+    private final JsonNode document = SerializationUtil.deserializeAsNode(
+            "{\"a\":{\"b\":{\"c\":3}},\"list\":[{\"x\":1}],\"n\":7}");
+
+    @Test
+    public void testComponents() {
+        final FieldPath fieldPath = FieldPath.of("shelf/boxes[]items[]color");
+        assertEquals(4, fieldPath.size());
+        assertEquals("shelf", fieldPath.getComponent(0));
+        assertEquals("color", fieldPath.getLastComponent());
+        assertFalse(fieldPath.isArrayStep(0));
+        assertTrue(fieldPath.isArrayStep(1));
+        assertTrue(fieldPath.isArrayStep(2));
+        assertFalse(fieldPath.isArrayStep(3));
+        assertTrue(fieldPath.hasArraySteps());
+        assertEquals("items", fieldPath.getComponent(2));
+        assertEquals("shelf/boxes[]items[]color", fieldPath.toString());
+        assertSame(fieldPath, FieldPath.of("shelf/boxes[]items[]color"));
+    }
+
+    @Test
+    public void testCacheStaysBounded() {
+        for (int i = 0; i < 5000; i++) {
+            final FieldPath cold = FieldPath.of("cold/path" + i);
+            assertSame(cold, FieldPath.of("cold/path" + i));
+        }
+        // once the cache has been cleared a name is split again, giving an equal FieldPath
+        assertEquals(FieldPath.of("cold/path0"), FieldPath.of("cold/path0"));
+        assertEquals("path0", FieldPath.of("cold/path0").getLastComponent());
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(IntNode.valueOf(3), FieldPath.of("a/b/c").find(document));
+        assertEquals(IntNode.valueOf(7), FieldPath.of("n").find(document));
+        assertNull(FieldPath.of("a/missing/c").find(document));
+        assertNull(FieldPath.of("n/c").find(document));
+        assertNull(FieldPath.of("list[]x").find(document));
+    }
+
+    @Test
+    public void testFindParent() {
+        assertSame(document.get("a").get("b"), FieldPath.of("a/b/missing").findParent(document));
+        assertNull(FieldPath.of("a/b/c/d").findParent(document));
+    }
+
+    @Test
+    public void testMatchesLookup() {
+        for (String fieldName : new String[] {"a/b/c", "a/b", "a/nope", "n/c", "list[]x", "list"}) {
+            assertEquals(
+                    Lookup.getField(fieldName.split("/"), document).orElse(null),
+                    FieldPath.of(fieldName).find(document));
+        }
+    }
+
+    @Test
+    public void testFindAll() {
+        final String[] fieldNames = {"a/b/c", "n", "a/b", "a/missing/c", "list[]x", "a/b/c", "n/c", "a/b/c/d", "a"};
+        final FieldPath[] fieldPaths = new FieldPath[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldPaths[i] = FieldPath.of(fieldNames[i]);
+        }
+        final JsonNode[] values = FieldPath.findAll(document, fieldPaths);
+        assertEquals(fieldPaths.length, values.length);
+        for (int i = 0; i < fieldPaths.length; i++) {
+            assertSame(fieldPaths[i].find(document), values[i], fieldNames[i]);
+        }
+        assertEquals(0, FieldPath.findAll(document).length);
+    }
+}